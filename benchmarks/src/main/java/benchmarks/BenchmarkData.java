@@ -0,0 +1,46 @@
+package benchmarks;
+
+import model.Movie;
+import utils.MovieGenerator;
+import utils.MovieStorage;
+import utils.OutputSink;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Shared preparation of the benchmarks
+ */
+class BenchmarkData {
+    private static final PrintStream CONSOLE = System.out;
+
+    /**
+     * replaces the collection with generated movies
+     * @param size number of movies
+     * @return movies in generation order (ids from 1 to size)
+     */
+    static List<Movie> fillStorage(int size) {
+        List<Movie> movies = MovieGenerator.generate(size, MovieGenerator.DEFAULT_SEED);
+        MovieStorage.clear();
+        for (Movie movie : movies) {
+            MovieStorage.restore(movie);
+        }
+        return movies;
+    }
+
+    /**
+     * drops the console output of the application, so printing does not dominate the results
+     */
+    static void silence() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * the output buffered by the application meanwhile is dropped as well
+     */
+    static void restoreConsole() {
+        OutputSink.flush();
+        System.setOut(CONSOLE);
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import utils.CommandExecutor;
+import utils.LineReader;
+import utils.MovieStorage;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commands passed through CommandExecutor, as they come from the console.
+ * The output goes to a discarding stream, so show measures the rendering only
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CommandBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"info", "head", "show", "count_by_mpaa_rating G", "filter_by_mpaa_rating R", "max_by_creation_date"})
+    public String command;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.silence();
+        BenchmarkData.fillStorage(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MovieStorage.clear();
+        BenchmarkData.restoreConsole();
+    }
+
+    @Benchmark
+    public void execute() {
+        CommandExecutor.executeScriptCommands(new LineReader(new Scanner(command)));
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import utils.FileAccessor;
+import utils.MovieStorage;
+import utils.SchemeGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and saving of the collection file in both formats
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class FileBenchmark {
+    private static final String SCHEMA_FILE_NAME = "config.xsd";
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"movies.xml", "movies" + FileAccessor.SNAPSHOT_EXTENSION})
+    public String fileName;
+
+    private Path directory;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.silence();
+        if (!new File(SCHEMA_FILE_NAME).exists()) {
+            SchemeGenerator.generateXsdScheme();
+        }
+        directory = Files.createTempDirectory("movies-benchmark");
+        file = directory.resolve(fileName);
+        BenchmarkData.fillStorage(size);
+        FileAccessor.init(file.toString());
+        if (!FileAccessor.save()) {
+            throw new IOException("The collection file is not written");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        MovieStorage.clear();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+        BenchmarkData.restoreConsole();
+    }
+
+    /**
+     * the collection must be filled before every save (load benchmarks empty it)
+     */
+    @State(Scope.Benchmark)
+    public static class FilledState {
+        @Setup(Level.Iteration)
+        public void fill(FileBenchmark benchmark) {
+            if (MovieStorage.size() != benchmark.size) {
+                BenchmarkData.fillStorage(benchmark.size);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean load() {
+        MovieStorage.clear();
+        FileAccessor.init(file.toString());
+        return FileAccessor.load(SCHEMA_FILE_NAME);
+    }
+
+    @Benchmark
+    public boolean save(FilledState state) {
+        FileAccessor.init(file.toString());
+        return FileAccessor.save();
+    }
+}
@@ -0,0 +1,162 @@
+package benchmarks;
+
+import model.Coordinates;
+import model.Movie;
+import model.MpaaRating;
+import model.Person;
+import utils.MovieGenerator;
+import utils.MovieStorage;
+import utils.UniqueValuesUtil;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heap taken by the movies in the boxed layout (Movie before the compact fields:
+ * Coordinates with Integer and Long, LocalDate, Integer oscars count, a String per record)
+ * and in the compact layout of Movie with the shared names, and the memory of the whole
+ * collection in MovieStorage (the movies and the indexes) on heap and in off-heap mode
+ * with the time of a full gc.
+ * It is not a JMH benchmark, the heap is measured after a full gc:
+ *   java -Xmx8g -XX:MaxDirectMemorySize=8g -cp benchmarks/target/benchmarks.jar benchmarks.FootprintBenchmark [count] [names]
+ * names - number of different movie names (0 - every name is unique)
+ */
+public class FootprintBenchmark {
+    private static final int DEFAULT_COUNT = 1_000_000;
+    private static final long TEN_MILLION = 10_000_000L;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COUNT;
+        int nameCount = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        MovieGenerator generator = new MovieGenerator(MovieGenerator.DEFAULT_SEED, MovieGenerator.DEFAULT_RATING_WEIGHTS,
+                MovieGenerator.DEFAULT_NO_SCREENWRITER_SHARE, nameCount, MovieGenerator.DEFAULT_SCREENWRITER_COUNT);
+        BenchmarkData.silence();
+        // the screenwriters are shared in both layouts, they are loaded before the measurement
+        generator.movies(1).forEach(movie -> { });
+
+        long base = usedHeap();
+        List<BoxedMovie> boxed = new ArrayList<>(count);
+        for (Movie movie : generator.movies(count)) {
+            boxed.add(new BoxedMovie(movie));
+        }
+        long boxedBytes = usedHeap() - base;
+        boxed = null;
+
+        base = usedHeap();
+        List<Movie> compact = new ArrayList<>(count);
+        for (Movie movie : generator.movies(count)) {
+            movie.setSharedName(UniqueValuesUtil.internName(movie.getName()));
+            compact.add(movie);
+        }
+        long compactBytes = usedHeap() - base;
+        compact = null;
+        UniqueValuesUtil.internName("");
+
+        base = usedHeap();
+        MovieStorage.clear();
+        for (Movie movie : generator.movies(count)) {
+            MovieStorage.restore(movie);
+        }
+        long storageBytes = usedHeap() - base;
+        long storageGcMillis = fullGcMillis();
+        MovieStorage.clear();
+
+        MovieStorage.useOffHeap();
+        base = usedHeap();
+        long directBase = directMemory();
+        for (Movie movie : generator.movies(count)) {
+            MovieStorage.restore(movie);
+        }
+        long offHeapBytes = usedHeap() - base;
+        long offHeapDirectBytes = directMemory() - directBase;
+        long offHeapGcMillis = fullGcMillis();
+        MovieStorage.clear();
+        BenchmarkData.restoreConsole();
+
+        System.out.println("movies: " + count + ", different names: " + (nameCount == 0 ? count : nameCount));
+        report("boxed records", boxedBytes, count);
+        report("compact records", compactBytes, count);
+        report("compact collection with indexes", storageBytes, count);
+        report("off-heap collection, heap", offHeapBytes, count);
+        report("off-heap collection, direct", offHeapDirectBytes, count);
+        System.out.println("full gc: on heap " + storageGcMillis + " ms, off-heap " + offHeapGcMillis + " ms");
+    }
+
+    private static long fullGcMillis() {
+        long start = System.nanoTime();
+        System.gc();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * direct buffers allocated (reserved capacity of the off-heap columns)
+     */
+    private static long directMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getTotalCapacity();
+            }
+        }
+        return 0;
+    }
+
+    private static void report(String layout, long bytes, int count) {
+        System.out.printf("%-32s %8.1f bytes/movie %10.1f MB, 10M movies: %6.2f GB%n", layout,
+                (double) bytes / count, bytes / 1e6, (double) bytes / count * TEN_MILLION / 1e9);
+    }
+
+    /**
+     * heap used after a full gc
+     */
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    /**
+     * the layout of Movie with the object fields
+     */
+    private static class BoxedMovie {
+        private final int id;
+        private final String name;
+        private final BoxedCoordinates coordinates;
+        private final LocalDate creationDate;
+        private final Integer oscarsCount;
+        private final int goldenPalmCount;
+        private final long length;
+        private final MpaaRating mpaaRating;
+        private final Person screenwriter;
+
+        BoxedMovie(Movie movie) {
+            id = movie.getId();
+            name = movie.getName();
+            Coordinates source = movie.getCoordinates();
+            coordinates = new BoxedCoordinates(source.getX(), source.getY());
+            creationDate = movie.getCreationDate();
+            oscarsCount = movie.getOscarsCount();
+            goldenPalmCount = movie.getGoldenPalmCount();
+            length = movie.getLength();
+            mpaaRating = movie.getMpaaRating();
+            screenwriter = movie.getScreenwriter();
+        }
+    }
+
+    private static class BoxedCoordinates {
+        private final Integer x;
+        private final Long y;
+
+        BoxedCoordinates(Integer x, Long y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
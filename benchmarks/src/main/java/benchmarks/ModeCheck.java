@@ -0,0 +1,186 @@
+package benchmarks;
+
+import model.Movie;
+import model.MpaaRating;
+import utils.Aggregates;
+import utils.FileAccessor;
+import utils.MovieGenerator;
+import utils.MovieQuery;
+import utils.MovieStorage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the answers of the read operations of MovieStorage, Aggregates and MovieQuery
+ * in every storage mode: a generated binary snapshot (written in id order, not in storage order)
+ * is loaded on heap, lazily, off-heap and lazily with off-heap in a separate JVM for every mode,
+ * the outputs must be equal.
+ * It is not a JMH benchmark:
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.ModeCheck [count]
+ */
+public class ModeCheck {
+    private static final int DEFAULT_COUNT = 200_000;
+    private static final String CHILD = "--child";
+    private static final String[][] MODES = {{}, {"--lazy"}, {"--off-heap"}, {"--lazy", "--off-heap"}};
+    private static final String[] QUERIES = {
+            "oscarsCount > 5 and length < 120 and screenwriter.nationality = FRANCE",
+            "mpaaRating = NC_17 and goldenPalmCount >= 10",
+            "screenwriter = null and oscarsCount <= 3",
+            "creationDate >= 2010-01-01 and creationDate < 2010-03-01 or x < -990"
+    };
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            check(args);
+            return;
+        }
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COUNT;
+        File file = File.createTempFile("mode-check", FileAccessor.SNAPSHOT_EXTENSION);
+        file.deleteOnExit();
+        BenchmarkData.silence();
+        boolean isGenerated = MovieGenerator.generate(new String[]{String.valueOf(count), file.getPath()});
+        BenchmarkData.restoreConsole();
+        if (!isGenerated) {
+            System.out.println("The snapshot is not generated.");
+            System.exit(1);
+        }
+
+        List<String> expected = null;
+        boolean isSame = true;
+        for (String[] mode : MODES) {
+            List<String> output = runChild(file, mode);
+            String name = mode.length == 0 ? "heap" : String.join(" ", mode);
+            if (expected == null) {
+                expected = output;
+                System.out.println(name + ": " + output.size() + " line(s)");
+                continue;
+            }
+            int line = firstDifference(expected, output);
+            if (line < 0) {
+                System.out.println(name + ": same");
+            } else {
+                isSame = false;
+                System.out.println(name + ": differs at line " + (line + 1) + "\n  heap: "
+                        + (line < expected.size() ? expected.get(line) : "<end>") + "\n  " + name + ": "
+                        + (line < output.size() ? output.get(line) : "<end>"));
+            }
+        }
+        if (!isSame) {
+            System.exit(1);
+        }
+    }
+
+    private static List<String> runChild(File file, String[] mode) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                ModeCheck.class.getName(), CHILD, file.getPath()));
+        command.addAll(List.of(mode));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> output;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            output = reader.lines().collect(Collectors.toList());
+        }
+        if (process.waitFor() != 0) {
+            output.add("exit code " + process.exitValue());
+        }
+        return output;
+    }
+
+    private static int firstDifference(List<String> expected, List<String> output) {
+        for (int i = 0; i < Math.max(expected.size(), output.size()); i++) {
+            if (i >= expected.size() || i >= output.size() || !expected.get(i).equals(output.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * loads the snapshot in the mode of the flags and prints the answers, lookups by id
+     * are the last ones (they leave lazy mode)
+     * @param args --child, file name and mode flags
+     */
+    private static void check(String[] args) {
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--lazy")) {
+                FileAccessor.setLazyLoad(true);
+            } else if (args[i].equals("--off-heap")) {
+                MovieStorage.useOffHeap();
+            }
+        }
+        FileAccessor.init(args[1]);
+        BenchmarkData.silence();
+        boolean isLoaded = FileAccessor.load("config.xsd");
+        BenchmarkData.restoreConsole();
+        if (!isLoaded) {
+            System.out.println("The snapshot is not loaded.");
+            System.exit(1);
+        }
+
+        int size = MovieStorage.size();
+        System.out.println("size " + size);
+        System.out.println("head " + MovieStorage.head());
+        for (int offset : new int[]{0, 1000, size / 2, size - 3}) {
+            System.out.println("page " + offset + " " + ids(MovieStorage.getIterator(Math.max(0, offset)), 3));
+        }
+        System.out.println("all " + MovieStorage.snapshot().toString().hashCode());
+        for (MpaaRating rating : ratings()) {
+            System.out.println("rating " + rating + " " + MovieStorage.countByMpaaRating(rating)
+                    + " " + MovieStorage.filterByMpaaRating(rating).toString().hashCode());
+        }
+        System.out.println("screenwriter null " + MovieStorage.countByScreenwriter(null));
+        System.out.println("dates " + MovieStorage.getMinCreationDate().getId() + " "
+                + MovieStorage.getMaxCreationDate().getId() + " " + MovieStorage.filterByCreationDate(
+                LocalDate.of(2015, 1, 1), LocalDate.of(2015, 2, 1)).toString().hashCode());
+        for (Aggregates.Field field : Aggregates.Field.values()) {
+            Aggregates.Stats stats = Aggregates.stats(field, true);
+            StringBuilder line = new StringBuilder("stats " + field.getFieldName());
+            for (int group = 0; group < stats.groups(); group++) {
+                line.append(' ').append(stats.count(group));
+                if (stats.count(group) > 0) {
+                    line.append(':').append(stats.sum(group)).append(':').append(stats.min(group))
+                            .append(':').append(stats.max(group));
+                }
+            }
+            System.out.println(line);
+            Aggregates.Histogram histogram = Aggregates.histogram(field, Aggregates.DEFAULT_HISTOGRAM_BUCKETS, false);
+            line = new StringBuilder("histogram " + field.getFieldName());
+            for (int bucket = 0; histogram != null && bucket < histogram.buckets(); bucket++) {
+                line.append(' ').append(histogram.lowerBound(bucket)).append(':').append(histogram.count(0, bucket));
+            }
+            System.out.println(line);
+        }
+        for (String query : QUERIES) {
+            List<Movie> movies = MovieQuery.compile(query).execute();
+            System.out.println("query " + movies.size() + " " + movies.toString().hashCode() + " " + query);
+        }
+        for (int id : new int[]{1, size / 3, size, size + 1}) {
+            System.out.println("id " + id + " " + MovieStorage.getById(id));
+        }
+    }
+
+    private static List<MpaaRating> ratings() {
+        List<MpaaRating> ratings = new ArrayList<>(List.of(MpaaRating.values()));
+        ratings.add(null);
+        return ratings;
+    }
+
+    private static String ids(Iterator<Movie> iterator, int count) {
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < count && iterator.hasNext(); i++) {
+            ids.append(iterator.next().getId()).append(' ');
+        }
+        return ids.toString().trim();
+    }
+}
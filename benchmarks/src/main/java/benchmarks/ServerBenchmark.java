@@ -0,0 +1,97 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import utils.MovieStorage;
+import utils.Server;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commands sent to the server over TCP on localhost.
+ * Every benchmark thread is a client with its own connection (the load generator),
+ * it sends a command and waits for the end of the response, so the score is
+ * the round trip latency and the throughput of all clients together
+ * (run with -t N for N clients)
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(4)
+@State(Scope.Benchmark)
+public class ServerBenchmark {
+    @Param({"100000"})
+    public int size;
+
+    @Param({"count_by_mpaa_rating G", "show 0 10", "update 1 Bench,1,2,3,4,100,G"})
+    public String command;
+
+    private Server server;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.silence();
+        BenchmarkData.fillStorage(size);
+        server = Server.start(0, Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+        MovieStorage.clear();
+        BenchmarkData.restoreConsole();
+    }
+
+    /**
+     * connection of one benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private Socket socket;
+        private Writer out;
+        private BufferedReader in;
+        private String request;
+
+        @Setup(Level.Trial)
+        public void connect(ServerBenchmark benchmark) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), benchmark.server.getPort());
+            socket.setTcpNoDelay(true);
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            request = benchmark.command + "\n";
+            readResponse();
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            socket.close();
+        }
+
+        /**
+         * @return number of lines of the response
+         */
+        int readResponse() throws IOException {
+            int count = 0;
+            String line;
+            while ((line = in.readLine()) != null && !line.equals(Server.RESPONSE_END)) {
+                count++;
+            }
+            if (line == null) {
+                throw new EOFException("The server closed the connection");
+            }
+            return count;
+        }
+    }
+
+    @Benchmark
+    public int roundTrip(Client client) throws IOException {
+        client.out.write(client.request);
+        client.out.flush();
+        return client.readResponse();
+    }
+}
@@ -0,0 +1,193 @@
+package benchmarks;
+
+import model.Movie;
+import model.MpaaRating;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.Aggregates;
+import utils.MovieGenerator;
+import utils.MovieQuery;
+import utils.MovieStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MovieStorage operations on a collection of the given size
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    /**
+     * oscars count of generated movies is 1..100, about 1% of them are removed by
+     * remove_greater and remove_lower with these bounds
+     */
+    private static final int GREATER_BOUND = 99;
+    private static final int LOWER_BOUND = 2;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private List<Movie> movies;
+    private List<Movie> templates;
+    private int[] ids;
+    private String[] screenwriters;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.silence();
+        movies = BenchmarkData.fillStorage(size);
+        templates = MovieGenerator.generate(1024, MovieGenerator.DEFAULT_SEED + 1);
+        Random random = new Random(MovieGenerator.DEFAULT_SEED);
+        ids = new int[1 << 16];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1 + random.nextInt(size);
+        }
+        screenwriters = movies.stream().filter(movie -> movie.getScreenwriter() != null)
+                .map(movie -> movie.getScreenwriter().getName()).distinct().limit(64).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MovieStorage.clear();
+        BenchmarkData.restoreConsole();
+    }
+
+    private int nextId() {
+        return ids[next++ & (ids.length - 1)];
+    }
+
+    @Benchmark
+    public Movie getById() {
+        return MovieStorage.getById(nextId());
+    }
+
+    @Benchmark
+    public void update() {
+        MovieStorage.update(nextId(), templates.get(next & (templates.size() - 1)));
+    }
+
+    @Benchmark
+    public void removeByIdAndRestore() {
+        Movie movie = movies.get(nextId() - 1);
+        MovieStorage.removeById(movie.getId());
+        MovieStorage.restore(movie);
+    }
+
+    @Benchmark
+    public int countByMpaaRating() {
+        return MovieStorage.countByMpaaRating(MpaaRating.values()[next++ % MpaaRating.values().length]);
+    }
+
+    @Benchmark
+    public List<Movie> filterByMpaaRating() {
+        return MovieStorage.filterByMpaaRating(MpaaRating.NC_17);
+    }
+
+    @Benchmark
+    public int countByScreenwriter() {
+        return MovieStorage.countByScreenwriter(screenwriters[next++ % screenwriters.length]);
+    }
+
+    @Benchmark
+    public List<Movie> filterByScreenwriter() {
+        return MovieStorage.filterByScreenwriter(screenwriters[0]);
+    }
+
+    /**
+     * compiled queries are cached, the calls measure the scan (first) and the rating index (second)
+     */
+    @Benchmark
+    public List<Movie> queryScan() {
+        return MovieQuery.compile("oscarsCount > 5 and length < 120 and screenwriter.nationality = FRANCE").execute();
+    }
+
+    @Benchmark
+    public List<Movie> queryByRating() {
+        return MovieQuery.compile("mpaaRating = NC_17 and length < 120").execute();
+    }
+
+    /**
+     * the column is copied by the first call, the next calls only run the loops
+     */
+    @Benchmark
+    public Aggregates.Stats sumLength() {
+        return Aggregates.stats(Aggregates.Field.LENGTH, false);
+    }
+
+    @Benchmark
+    public Aggregates.Stats statsByRating() {
+        return Aggregates.stats(Aggregates.Field.OSCARS_COUNT, true);
+    }
+
+    @Benchmark
+    public Aggregates.Histogram histogram() {
+        return Aggregates.histogram(Aggregates.Field.LENGTH, Aggregates.DEFAULT_HISTOGRAM_BUCKETS, false);
+    }
+
+    @Benchmark
+    public Movie maxByCreationDate() {
+        return MovieStorage.getMaxCreationDate();
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        MovieStorage.getIterator().forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    public List<Movie> snapshot() {
+        return MovieStorage.snapshot();
+    }
+
+    /**
+     * movies removed by the range commands are put back before every call
+     */
+    @State(Scope.Benchmark)
+    public static class RangeState {
+        private final List<Movie> greater = new ArrayList<>();
+        private final List<Movie> lower = new ArrayList<>();
+
+        @Setup(Level.Trial)
+        public void setUp(StorageBenchmark benchmark) {
+            for (Movie movie : benchmark.movies) {
+                if (movie.getOscarsCount() > GREATER_BOUND) {
+                    greater.add(movie);
+                } else if (movie.getOscarsCount() < LOWER_BOUND) {
+                    lower.add(movie);
+                }
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void refill() {
+            for (Movie movie : greater) {
+                if (MovieStorage.getById(movie.getId()) == null) {
+                    MovieStorage.restore(movie);
+                }
+            }
+            for (Movie movie : lower) {
+                if (MovieStorage.getById(movie.getId()) == null) {
+                    MovieStorage.restore(movie);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void removeGreater(RangeState state) {
+        MovieStorage.removeGreater(GREATER_BOUND);
+    }
+
+    @Benchmark
+    public void removeLower(RangeState state) {
+        MovieStorage.removeLower(LOWER_BOUND);
+    }
+}
@@ -1,16 +1,11 @@
-import org.w3c.dom.Document;
+import utils.Autosave;
 import utils.CommandExecutor;
 import utils.FileAccessor;
+import utils.LineReader;
+import utils.MovieStorage;
 import utils.SchemeGenerator;
+import utils.Server;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Source;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
@@ -24,7 +19,14 @@ import java.util.regex.Pattern;
 public class Main {
 
     /**
-     * @param args filename for input and output (same file)
+     * @param args filename for input and output (same file),
+     *             optional flags: --parallel (load the file on several cores),
+     *             --lazy (map a binary snapshot and decode movies on demand),
+     *             --batch script_file (execute the script in batch mode instead of the console),
+     *             --autosave seconds (save the changed collection in the background every period),
+     *             --server port (serve the commands to clients over TCP on localhost instead of the console),
+     *             --off-heap (keep the collection in direct memory outside the Java heap,
+     *             the limit is set by -XX:MaxDirectMemorySize)
      */
     public static void main(String[] args) {
 
@@ -38,6 +40,46 @@ public class Main {
         boolean isFileReadebleWritable;
         String schemaName = "config.xsd";
         String xmlFileName = args[0];
+        String batchFileName = null;
+        long autosavePeriod = 0;
+        int serverPort = -1;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--parallel":
+                    FileAccessor.setParallelLoad(true);
+                    break;
+                case "--lazy":
+                    FileAccessor.setLazyLoad(true);
+                    break;
+                case "--off-heap":
+                    MovieStorage.useOffHeap();
+                    break;
+                case "--batch":
+                    if (i + 1 < args.length) {
+                        batchFileName = args[++i];
+                    } else {
+                        System.out.println("Script file name is expected after '--batch'.\n");
+                    }
+                    break;
+                case "--autosave":
+                    try {
+                        autosavePeriod = Long.parseLong(args[++i]);
+                    } catch (RuntimeException e) {
+                        System.out.println("Autosave period in seconds is expected after '--autosave'.\n");
+                    }
+                    break;
+                case "--server":
+                    try {
+                        serverPort = Integer.parseInt(args[++i]);
+                    } catch (RuntimeException e) {
+                        System.out.println("Port is expected after '--server'.\n");
+                    }
+                    break;
+                default:
+                    System.out.println("Unknown option '" + args[i] + "' is ignored.\n");
+            }
+        }
 
         /*
          xsd file verification unit
@@ -166,26 +208,18 @@ public class Main {
                  Checking the XML document using the scheme XSD
                  */
                 System.out.println("Checking the structure of the document in progress.\n");
-                try {
-                    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                    factory.setNamespaceAware(true); //default value false
-                    DocumentBuilder builder = factory.newDocumentBuilder();
-
-                    Document doc = builder.parse(new File(xmlFileName));
-
-                    SchemaFactory aSF = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-                    Schema schema = aSF.newSchema(new File("config.xsd"));
-                    Validator validator = schema.newValidator();
-
-                    Source dsource = new DOMSource(doc);
-                    validator.validate(dsource);
+                /*
+                 The file is validated while it is being loaded (single pass),
+                 binary snapshots (see FileAccessor.SNAPSHOT_EXTENSION) are checked by their header
+                 */
+                FileAccessor.init(xmlFileName);
+                if (FileAccessor.load(schemaName)) {
                     System.out.println("Checking is passed.\n");
                     isFileValid = true;
                     break;
-                } catch (Throwable e) {
-                    isFileValid = false;
-                    System.out.println("'" + xmlFileName + "'" + " structure is damaged!");
                 }
+                isFileValid = false;
+                System.out.println("'" + xmlFileName + "'" + " structure is damaged!");
 
                 System.out.println("Want to try to use another file? \n['Y' to accept / Any symbol for cancellation]");
                 if (sc.hasNext()) {
@@ -265,9 +299,30 @@ public class Main {
          */
         if (isFileValid && isFileReadebleWritable) {
             FileAccessor.init(xmlFileName);
-            FileAccessor.readFromXmlFile();
-            try (Scanner scan = new Scanner(System.in)) {
+            FileAccessor.openJournal();
+            if (autosavePeriod > 0) {
+                Autosave.start(autosavePeriod);
+            }
+            if (batchFileName != null) {
+                FileAccessor.readBatch(batchFileName);
+                Autosave.stop();
+                System.out.println("The program terminated.");
+                return;
+            }
+            if (serverPort >= 0) {
+                try (Server server = Server.start(serverPort, Runtime.getRuntime().availableProcessors())) {
+                    System.out.println("The server is listening on localhost:" + server.getPort() + ".");
+                    server.await();
+                } catch (IOException | InterruptedException e) {
+                    System.out.println("Server error" + ": " + e.getMessage());
+                }
+                Autosave.stop();
+                System.out.println("The program terminated.");
+                return;
+            }
+            try (LineReader scan = new LineReader(new Scanner(System.in))) {
                 CommandExecutor.startExecution(scan);
+            } catch (IOException ignore) {
             }
         }
     }
@@ -7,8 +7,8 @@ import javax.xml.stream.XMLStreamWriter;
  * XY coordinates
  */
 public class Coordinates {
-    private Integer x;  //Значение поля должно быть больше -162, Поле не может быть null
-    private Long y;     //Максимальное значение поля: 232, Поле не может быть null
+    private int x;      //Значение поля должно быть больше -162, Поле не может быть null
+    private long y;     //Максимальное значение поля: 232, Поле не может быть null
 
     public Coordinates(Integer x, Long y) {
         checkState(x, y);
@@ -16,10 +16,40 @@ public class Coordinates {
         this.y = y;
     }
 
+    /**
+     * @return x coordinate
+     */
+    public Integer getX() {
+        return x;
+    }
+
+    /**
+     * @return y coordinate
+     */
+    public Long getY() {
+        return y;
+    }
+
     @Override
     public String toString() {
-        return "x=" + x + ", " +
-                "y=" + y;
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    /**
+     * Write text representation of the object (the same as toString).
+     * @param sb buffer for the text
+     * @return sb
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return appendTo(sb, x, y);
+    }
+
+    /**
+     * text representation of coordinates stored as primitives (see Movie)
+     */
+    static StringBuilder appendTo(StringBuilder sb, int x, long y) {
+        return sb.append("x=").append(x).append(", ")
+                .append("y=").append(y);
     }
 
     /**
@@ -28,12 +58,19 @@ public class Coordinates {
      * @throws XMLStreamException
      */
     public void convertCoordinatesToXml(XMLStreamWriter xsw) throws XMLStreamException {
+        convertCoordinatesToXml(xsw, x, y);
+    }
+
+    /**
+     * xml representation of coordinates stored as primitives (see Movie)
+     */
+    static void convertCoordinatesToXml(XMLStreamWriter xsw, int x, long y) throws XMLStreamException {
         xsw.writeStartElement("x");
         xsw.writeCharacters(String.valueOf(x));
         xsw.writeEndElement();
 
         xsw.writeStartElement("y");
-        xsw.writeCharacters(y.toString());
+        xsw.writeCharacters(String.valueOf(y));
         xsw.writeEndElement();
     }
 
@@ -43,7 +80,7 @@ public class Coordinates {
      * @throws IllegalArgumentException illegal args value
      */
     private void checkState(Integer x, Long y) {
-        if (x > -162 && x != null && y <= 232 && y != null) {
+        if (x != null && x > -162 && y != null && y <= 232) {
             return;
         }
         throw new IllegalArgumentException("Illegal argument value for coordinates");
@@ -4,15 +4,25 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import java.time.LocalDate;
 
+/**
+ * Movie record. The fields are kept in a compact form: coordinates, creation date,
+ * oscars count and mpaa rating are stored as primitives (64 bytes per movie
+ * instead of about 140 with the boxed fields and the Coordinates and LocalDate objects),
+ * the getters build the objects on demand
+ */
 public class Movie implements Comparable<Movie> {   //implements Comparable<Movie>
+    private static final byte NO_RATING = -1;
+    private static final MpaaRating[] RATINGS = MpaaRating.values();
+
     private int id;                                 //Значение поля должно быть больше 0, Значение этого поля должно быть уникальным, Значение этого поля должно генерироваться автоматически
     private String name;                            //Поле не может быть null
-    private Coordinates coordinates;                //Поле не может быть null
-    private LocalDate creationDate;                 //Поле не может быть null
-    private Integer oscarsCount;                    //Значение поля должно быть больше 0
+    private int x;                                  //coordinates, Поле не может быть null
+    private long y;
+    private int creationDay;                        //creation date as LocalDate.toEpochDay, Поле не может быть null
+    private int oscarsCount;                        //Значение поля должно быть больше 0
     private int goldenPalmCount;                    //Значение поля должно быть больше 0
     private long length;                            //Значение поля должно быть больше 0
-    private MpaaRating mpaaRating;                  //Поле может быть null
+    private byte mpaaRating;                        //ordinal, NO_RATING - Поле может быть null
     private Person screenwriter;                    //Не указано -> Поле может быть null
 
     public Movie(int id,
@@ -33,12 +43,13 @@ public class Movie implements Comparable<Movie> {   //implements Comparable<Movi
                 length);
         this.id = id;
         this.name = name;
-        this.coordinates = coordinates;
-        this.creationDate = creationDate;
+        this.x = coordinates.getX();
+        this.y = coordinates.getY();
+        this.creationDay = (int) creationDate.toEpochDay();
         this.oscarsCount = oscarsCount;
         this.goldenPalmCount = goldenPalmCount;
         this.length = length;
-        this.mpaaRating = mpaaRating;
+        this.mpaaRating = ratingOrdinal(mpaaRating);
         this.screenwriter = screenwriter;
     }
 
@@ -58,15 +69,27 @@ public class Movie implements Comparable<Movie> {   //implements Comparable<Movi
 
     @Override
     public String toString() {
-        return "Movie: " +"\n" +
-                "id: " + id + "\n" +
-                "name: '" + name + '\'' + "\n" +
-                "coordinates: " + coordinates + "\n" +
-                "creation date: " + creationDate + "\n" +
-                "oscars count: " + oscarsCount + "\n" +
-                "golden palm count: " + goldenPalmCount + "\n" +
-                "length: " + length + "\n" +
-                "mpaa rating: " + mpaaRating + "\n";
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    /**
+     * Write text representation of the object (the same as toString) without intermediate strings.
+     *
+     * @param sb buffer for the text
+     * @return sb
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        sb.append("Movie: ").append("\n")
+                .append("id: ").append(id).append("\n")
+                .append("name: '").append(name).append('\'').append("\n")
+                .append("coordinates: ");
+        Coordinates.appendTo(sb, x, y).append("\n")
+                .append("creation date: ").append(getCreationDate()).append("\n")
+                .append("oscars count: ").append(oscarsCount).append("\n")
+                .append("golden palm count: ").append(goldenPalmCount).append("\n")
+                .append("length: ").append(length).append("\n")
+                .append("mpaa rating: ").append(getMpaaRating()).append("\n");
+        return sb;
     }
 
     /**
@@ -85,11 +108,11 @@ public class Movie implements Comparable<Movie> {   //implements Comparable<Movi
         xsw.writeEndElement();
 
         xsw.writeStartElement("coordinates");
-        coordinates.convertCoordinatesToXml(xsw);
+        Coordinates.convertCoordinatesToXml(xsw, x, y);
         xsw.writeEndElement();
 
         xsw.writeStartElement("creationDate");
-        xsw.writeCharacters(creationDate.toString());
+        xsw.writeCharacters(getCreationDate().toString());
         xsw.writeEndElement();
 
         xsw.writeStartElement("oscarsCount");
@@ -104,9 +127,9 @@ public class Movie implements Comparable<Movie> {   //implements Comparable<Movi
         xsw.writeCharacters(String.valueOf(length));
         xsw.writeEndElement();
 
-        if (mpaaRating != null) {
+        if (mpaaRating != NO_RATING) {
             xsw.writeStartElement("mpaaRating");
-            xsw.writeCharacters(mpaaRating.name());
+            xsw.writeCharacters(RATINGS[mpaaRating].name());
             xsw.writeEndElement();
         } else {
             xsw.writeStartElement("mpaaRating");
@@ -137,6 +160,8 @@ public class Movie implements Comparable<Movie> {   //implements Comparable<Movi
                 && !name.isEmpty()
                 && coordinates != null
                 && creationDate != null
+                && creationDate.toEpochDay() == (int) creationDate.toEpochDay()
+                && oscarsCount != null
                 && oscarsCount > 0
                 && goldenPalmCount > 0
                 && length > 0) {
@@ -145,28 +170,31 @@ public class Movie implements Comparable<Movie> {   //implements Comparable<Movi
         throw new IllegalArgumentException("Illegal argument value for movie - " + "id: " + id + ", name: " + name + ", coordinates: " + coordinates + ", creation date: " + creationDate);
     }
 
+    private static byte ratingOrdinal(MpaaRating mpaaRating) {
+        return mpaaRating == null ? NO_RATING : (byte) mpaaRating.ordinal();
+    }
+
     public void setId(int id) {
         this.id = id;
     }
 
     /**
-     * Update state
-     * @throws IllegalArgumentException illegal args value
+     * replaces the name with an equal shared instance (see UniqueValuesUtil.internName)
+     * @param name
+     * @throws IllegalArgumentException the name is not equal to the current one
      */
-    public void update(String name, Coordinates coordinates, Integer oscarsCount, int goldenPalmCount, long length, MpaaRating mpaaRating, Person screenwriter) {
-        checkState(id,
-                name,
-                coordinates,
-                creationDate,
-                oscarsCount,
-                goldenPalmCount,
-                length);
+    public void setSharedName(String name) {
+        if (!this.name.equals(name)) {
+            throw new IllegalArgumentException("Shared name differs from the movie name: " + name);
+        }
         this.name = name;
-        this.coordinates = coordinates;
-        this.oscarsCount = oscarsCount;
-        this.goldenPalmCount = goldenPalmCount;
-        this.length = length;
-        this.mpaaRating = mpaaRating;
+    }
+
+    /**
+     * replaces the screenwriter with an equal shared instance (see UniqueValuesUtil.internPerson)
+     * @param screenwriter
+     */
+    public void setScreenwriter(Person screenwriter) {
         this.screenwriter = screenwriter;
     }
 
@@ -181,20 +209,41 @@ public class Movie implements Comparable<Movie> {   //implements Comparable<Movi
      * @return movie coordinates
      */
     public Coordinates getCoordinates() {
-        return coordinates;
+        return new Coordinates(x, y);
     }
 
     /**
      * @return movie creation date
      */
     public LocalDate getCreationDate() {
-        return creationDate;
+        return LocalDate.ofEpochDay(creationDay);
+    }
+
+    /**
+     * @return x coordinate (without creating Coordinates)
+     */
+    public int getCoordinateX() {
+        return x;
+    }
+
+    /**
+     * @return y coordinate (without creating Coordinates)
+     */
+    public long getCoordinateY() {
+        return y;
+    }
+
+    /**
+     * @return creation date as LocalDate.toEpochDay (without creating LocalDate)
+     */
+    public long getCreationEpochDay() {
+        return creationDay;
     }
 
     /**
      * @return movie oscar count
      */
-    public Integer getOscarsCount() {
+    public int getOscarsCount() {
         return oscarsCount;
     }
 
@@ -216,16 +265,11 @@ public class Movie implements Comparable<Movie> {   //implements Comparable<Movi
      * @return movie mpaa rating
      */
     public MpaaRating getMpaaRating() {
-        return mpaaRating;
+        return mpaaRating == NO_RATING ? null : RATINGS[mpaaRating];
     }
 
     @Override
     public int compareTo(Movie o) {
-        if (this.oscarsCount > o.getOscarsCount()) {
-            return 1;
-        } else if (this.oscarsCount.equals(o.getOscarsCount())) {
-            return 0;
-        }
-        return -1;
+        return Integer.compare(oscarsCount, o.oscarsCount);
     }
 }
\ No newline at end of file
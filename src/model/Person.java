@@ -4,14 +4,15 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
 /**
- * Person description
+ * Person description.
+ * Immutable: a person is shared by all movies of the screenwriter (see UniqueValuesUtil.internPerson)
  */
 public class Person {
-    private String name;        //Поле не может быть null, Строка не может быть пустой
-    private Integer weight;     //Значение поля должно быть больше 0
-    private Color eyeColor;     //Поле не может быть null
-    private Color hairColor;    //Поле не может быть null
-    private Country nationality;//Поле может быть null
+    private final String name;        //Поле не может быть null, Строка не может быть пустой
+    private final int weight;         //Значение поля должно быть больше 0
+    private final Color eyeColor;     //Поле не может быть null
+    private final Color hairColor;    //Поле не может быть null
+    private final Country nationality;//Поле может быть null
 
     public Person(String name,
                   Integer weight,
@@ -28,12 +29,21 @@ public class Person {
 
     @Override
     public String toString() {
-        return "Screenwriter info " + "\n" +
-                "name: " + name  +
-                ", weight: " + weight +
-                ", eyeColor: " + eyeColor +
-                ", hairColor: " + hairColor +
-                ", nationality: " + nationality + "\n" + "\n";
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    /**
+     * Write text representation of the object (the same as toString).
+     * @param sb buffer for the text
+     * @return sb
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append("Screenwriter info ").append("\n")
+                .append("name: ").append(name)
+                .append(", weight: ").append(weight)
+                .append(", eyeColor: ").append(eyeColor)
+                .append(", hairColor: ").append(hairColor)
+                .append(", nationality: ").append(nationality).append("\n").append("\n");
     }
 
     /**
@@ -77,7 +87,35 @@ public class Person {
     }
 
     /**
-     * Validate params before state updating
+     * @return screenwriter weight
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return screenwriter eye color
+     */
+    public Color getEyeColor() {
+        return eyeColor;
+    }
+
+    /**
+     * @return screenwriter hair color
+     */
+    public Color getHairColor() {
+        return hairColor;
+    }
+
+    /**
+     * @return screenwriter nationality
+     */
+    public Country getNationality() {
+        return nationality;
+    }
+
+    /**
+     * Validate params before the state is set
      * @param name
      * @param weight
      * @param eyeColor
@@ -90,6 +128,7 @@ public class Person {
                             Color hairColor) {
         if (name != null
                 && !(name.isEmpty())
+                && weight != null
                 && weight > 0
                 && eyeColor != null
                 && hairColor != null) {
@@ -97,15 +136,4 @@ public class Person {
         }
         throw new IllegalArgumentException("Illegal argument value for person - " + "name: " + name + ", weight: " + weight);
     }
-
-    /**
-     * Update state
-     */
-    public void update(String name, Integer weight, Color eyeColor, Color hairColor, Country nationality) {
-        this.name = name;
-        this.weight = weight;
-        this.eyeColor = eyeColor;
-        this.hairColor = hairColor;
-        this.nationality = nationality;
-    }
 }
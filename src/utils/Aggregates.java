@@ -0,0 +1,378 @@
+package utils;
+
+import model.Movie;
+import model.MpaaRating;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Aggregate queries (sum, avg, min, max, histogram) over the numeric fields of the collection,
+ * optionally grouped by mpaa rating.
+ * The values of a field are copied once into a primitive array (see MovieStorage.readColumn),
+ * the copy is reused until the collection changes. The queries run tight loops over the
+ * arrays (the ungrouped loops have no branches and are vectorized by the JIT),
+ * big collections are split over the common fork-join pool
+ */
+public class Aggregates {
+    /**
+     * groups: slot 0 for null rating and ordinal + 1 for the others
+     */
+    public static final int RATING_SLOTS = MpaaRating.values().length + 1;
+    public static final int DEFAULT_HISTOGRAM_BUCKETS = 10;
+    public static final int MAX_HISTOGRAM_BUCKETS = 1000;
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final long LOW_MASK = 0xFFFFFFFFL;
+
+    private static final EnumMap<Field, Column> COLUMNS = new EnumMap<>(Field.class);
+
+    /**
+     * numeric fields of Movie
+     */
+    public enum Field {
+        OSCARS_COUNT("oscarsCount", Movie::getOscarsCount),
+        GOLDEN_PALM_COUNT("goldenPalmCount", Movie::getGoldenPalmCount),
+        LENGTH("length", Movie::getLength),
+        X("x", Movie::getCoordinateX),
+        Y("y", Movie::getCoordinateY);
+
+        private final String fieldName;
+        private final ToLongFunction<Movie> getter;
+
+        Field(String fieldName, ToLongFunction<Movie> getter) {
+            this.fieldName = fieldName;
+            this.getter = getter;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        long get(Movie movie) {
+            return getter.applyAsLong(movie);
+        }
+
+        /**
+         * @param fieldName name of the field as in the xml file (x and y for coordinates)
+         * @return field
+         * @throws IllegalArgumentException for unknown or not numeric field
+         */
+        public static Field parse(String fieldName) {
+            for (Field field : values()) {
+                if (field.fieldName.equals(fieldName)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unknown numeric field '" + fieldName
+                    + "', expected oscarsCount, goldenPalmCount, length, x or y");
+        }
+    }
+
+    /**
+     * values of a field and rating slots of the movies at one version of the collection
+     */
+    static class Column {
+        private final long version;
+        private final long[] values;
+        private final byte[] ratingSlots;
+
+        /**
+         * @param version version of the collection (see MovieStorage.getVersion)
+         * @param values values of the field
+         * @param ratingSlots rating slot of every value (0 for null, ordinal + 1)
+         */
+        Column(long version, long[] values, byte[] ratingSlots) {
+            this.version = version;
+            this.values = values;
+            this.ratingSlots = ratingSlots;
+        }
+    }
+
+    /**
+     * count, sum, min and max of the values of every group
+     */
+    public static class Stats {
+        private final long[] counts;
+        /**
+         * the sum is kept in two halves (sum of the high 32 bits and of the low 32 bits
+         * of every value), they can not overflow for less than 2^31 values
+         */
+        private final long[] highSums;
+        private final long[] lowSums;
+        private final long[] mins;
+        private final long[] maxs;
+
+        private Stats(int groups) {
+            counts = new long[groups];
+            highSums = new long[groups];
+            lowSums = new long[groups];
+            mins = new long[groups];
+            maxs = new long[groups];
+            Arrays.fill(mins, Long.MAX_VALUE);
+            Arrays.fill(maxs, Long.MIN_VALUE);
+        }
+
+        /**
+         * @return 1 or RATING_SLOTS for grouped query
+         */
+        public int groups() {
+            return counts.length;
+        }
+
+        public long count(int group) {
+            return counts[group];
+        }
+
+        /**
+         * @return exact sum (may not fit in long)
+         */
+        public BigInteger sum(int group) {
+            return BigInteger.valueOf(highSums[group]).shiftLeft(32).add(BigInteger.valueOf(lowSums[group]));
+        }
+
+        public double avg(int group) {
+            return new BigDecimal(sum(group)).divide(BigDecimal.valueOf(counts[group]), MathContext.DECIMAL64)
+                    .doubleValue();
+        }
+
+        public long min(int group) {
+            return mins[group];
+        }
+
+        public long max(int group) {
+            return maxs[group];
+        }
+
+        private Stats merge(Stats other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+                highSums[i] += other.highSums[i];
+                lowSums[i] += other.lowSums[i];
+                mins[i] = Math.min(mins[i], other.mins[i]);
+                maxs[i] = Math.max(maxs[i], other.maxs[i]);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * counts of values in equal ranges between the min and the max of the field
+     */
+    public static class Histogram {
+        private final long min;
+        private final long max;
+        private final long width;
+        private final long[][] counts;
+
+        private Histogram(long min, long max, long width, long[][] counts) {
+            this.min = min;
+            this.max = max;
+            this.width = width;
+            this.counts = counts;
+        }
+
+        /**
+         * @return 1 or RATING_SLOTS for grouped query
+         */
+        public int groups() {
+            return counts.length;
+        }
+
+        public int buckets() {
+            return counts[0].length;
+        }
+
+        /**
+         * @return first value of the bucket
+         */
+        public long lowerBound(int bucket) {
+            return min + bucket * width;
+        }
+
+        /**
+         * @return last value of the bucket (the max of the field for the last bucket)
+         */
+        public long upperBound(int bucket) {
+            return bucket == buckets() - 1 ? max : lowerBound(bucket + 1) - 1;
+        }
+
+        public long count(int group, int bucket) {
+            return counts[group][bucket];
+        }
+    }
+
+    /**
+     * @param field
+     * @param isGrouped true to compute the stats of every rating
+     * @return stats of all movies (group 0) or of every rating slot
+     */
+    public static Stats stats(Field field, boolean isGrouped) {
+        Column column = column(field);
+        return split(column.values.length, (from, to) -> isGrouped
+                ? groupedStats(column.values, column.ratingSlots, from, to)
+                : stats(column.values, from, to), Stats::merge);
+    }
+
+    /**
+     * @param field
+     * @param buckets number of ranges
+     * @param isGrouped true for a histogram of every rating (with the same ranges)
+     * @return histogram or null for empty collection
+     * @throws IllegalArgumentException illegal number of buckets
+     */
+    public static Histogram histogram(Field field, int buckets, boolean isGrouped) {
+        if (buckets < 1 || buckets > MAX_HISTOGRAM_BUCKETS) {
+            throw new IllegalArgumentException("Number of buckets must be from 1 to " + MAX_HISTOGRAM_BUCKETS);
+        }
+        Column column = column(field);
+        Stats total = split(column.values.length, (from, to) -> stats(column.values, from, to), Stats::merge);
+        if (total.count(0) == 0) {
+            return null;
+        }
+        long min = total.min(0);
+        // unsigned arithmetic: the range of a long field may exceed Long.MAX_VALUE
+        long width = Long.divideUnsigned(total.max(0) - min, buckets) + 1;
+        long[][] counts = split(column.values.length,
+                (from, to) -> bucketCounts(column, isGrouped, min, width, buckets, from, to),
+                Aggregates::mergeCounts);
+        int usedBuckets = (int) Long.divideUnsigned(total.max(0) - min, width) + 1;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = Arrays.copyOf(counts[i], usedBuckets);
+        }
+        return new Histogram(min, total.max(0), width, counts);
+    }
+
+    /**
+     * the column of the current version of the collection, copied again after a change
+     */
+    private static synchronized Column column(Field field) {
+        Column column = COLUMNS.get(field);
+        if (column == null || column.version != MovieStorage.getVersion()) {
+            column = MovieStorage.readColumn(field);
+            COLUMNS.put(field, column);
+        }
+        return column;
+    }
+
+    /**
+     * @param size number of values
+     * @param part computes the result for a range of values
+     * @param merge merges two results (may change and return the first one)
+     * @return result for all values, parts are computed in parallel for big collections
+     */
+    private static <T> T split(int size, RangeFunction<T> part, BinaryOperator<T> merge) {
+        if (size < PARALLEL_THRESHOLD) {
+            return part.apply(0, size);
+        }
+        int parts = (int) Math.min((long) size / PARALLEL_THRESHOLD,
+                4L * Runtime.getRuntime().availableProcessors());
+        long partSize = ((long) size + parts - 1) / parts;
+        return IntStream.range(0, parts).parallel()
+                .mapToObj(i -> part.apply((int) (i * partSize), (int) Math.min(size, (i + 1) * partSize)))
+                .reduce(merge)
+                .orElseThrow();
+    }
+
+    /**
+     * computes a result for the values from (inclusive) to (exclusive)
+     */
+    private interface RangeFunction<T> {
+        T apply(int from, int to);
+    }
+
+    private static Stats stats(long[] values, int from, int to) {
+        long lowSum = 0;
+        long highSum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            long value = values[i];
+            lowSum += value & LOW_MASK;
+            highSum += value >> 32;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        Stats stats = new Stats(1);
+        stats.counts[0] = to - from;
+        stats.lowSums[0] = lowSum;
+        stats.highSums[0] = highSum;
+        stats.mins[0] = min;
+        stats.maxs[0] = max;
+        return stats;
+    }
+
+    private static Stats groupedStats(long[] values, byte[] ratingSlots, int from, int to) {
+        Stats stats = new Stats(RATING_SLOTS);
+        long[] counts = stats.counts;
+        long[] lowSums = stats.lowSums;
+        long[] highSums = stats.highSums;
+        long[] mins = stats.mins;
+        long[] maxs = stats.maxs;
+        for (int i = from; i < to; i++) {
+            long value = values[i];
+            int slot = ratingSlots[i];
+            counts[slot]++;
+            lowSums[slot] += value & LOW_MASK;
+            highSums[slot] += value >> 32;
+            mins[slot] = Math.min(mins[slot], value);
+            maxs[slot] = Math.max(maxs[slot], value);
+        }
+        return stats;
+    }
+
+    private static long[][] bucketCounts(Column column, boolean isGrouped, long min, long width, int buckets,
+                                         int from, int to) {
+        long[][] counts = new long[isGrouped ? RATING_SLOTS : 1][buckets];
+        long[] values = column.values;
+        byte[] ratingSlots = column.ratingSlots;
+        for (int i = from; i < to; i++) {
+            int bucket = (int) Long.divideUnsigned(values[i] - min, width);
+            counts[isGrouped ? ratingSlots[i] : 0][bucket]++;
+        }
+        return counts;
+    }
+
+    private static long[][] mergeCounts(long[][] a, long[][] b) {
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[i].length; j++) {
+                a[i][j] += b[i][j];
+            }
+        }
+        return a;
+    }
+
+    /**
+     * @param group group of a grouped result
+     * @return name of the rating of the group ("null" for movies without rating)
+     */
+    public static String groupName(int group) {
+        return group == 0 ? "null" : MpaaRating.values()[group - 1].name();
+    }
+
+    /**
+     * copies a field from movies (heap mode)
+     * @param version version of the collection the movies are taken at
+     * @param field
+     * @param size number of movies
+     * @param movies movie by number
+     * @return column
+     */
+    static Column copyColumn(long version, Field field, int size, IntFunction<Movie> movies) {
+        long[] values = new long[size];
+        byte[] ratingSlots = new byte[size];
+        for (int i = 0; i < size; i++) {
+            Movie movie = movies.apply(i);
+            values[i] = field.get(movie);
+            MpaaRating rating = movie.getMpaaRating();
+            ratingSlots[i] = (byte) (rating == null ? 0 : rating.ordinal() + 1);
+        }
+        return new Column(version, values, ratingSlots);
+    }
+}
@@ -0,0 +1,69 @@
+package utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background saving of the collection: every period the collection is saved
+ * (see FileAccessor.save) if it has changed since the last save.
+ * The file is written from a snapshot of the storage on a separate thread,
+ * the command loop goes on meanwhile
+ */
+public class Autosave {
+    private static final long STOP_TIMEOUT_SECONDS = 60;
+
+    private static ScheduledExecutorService executor = null;
+
+    /**
+     * starts saving in the background (restarts with the new period if already started)
+     * @param periodSeconds period between saves
+     * @throws IllegalArgumentException period is not positive
+     */
+    public static synchronized void start(long periodSeconds) {
+        if (periodSeconds <= 0) {
+            throw new IllegalArgumentException("Autosave period must be positive");
+        }
+        stop();
+        executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(Autosave::save, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * stops saving in the background, waits for the save in progress
+     * (the changes after the last save are not saved)
+     */
+    public static synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    /**
+     * an exception would cancel the next saves, so it is only reported
+     * (the messages of the save go to the console through the buffer of the autosave thread)
+     */
+    private static void save() {
+        try {
+            if (!FileAccessor.autosave()) {
+                OutputSink.println("Autosave error" + ": " + "the file is not written");
+            }
+        } catch (RuntimeException e) {
+//            e.printStackTrace();
+            OutputSink.println("Autosave error" + ": " + e.getMessage());
+        } finally {
+            OutputSink.flush();
+        }
+    }
+}
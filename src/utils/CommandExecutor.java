@@ -3,8 +3,10 @@ package utils;
 import model.Movie;
 import model.MpaaRating;
 
+import java.time.LocalDate;
 import java.util.*;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 /**
@@ -15,26 +17,58 @@ public class CommandExecutor {
     /**
      *defines the mapping of command names to its calls
      */
-    private static final Map<String, BiConsumer<String, Scanner>> COMMAND_FUNCTION_MAP;
+    private static final Map<String, BiConsumer<String, LineReader>> COMMAND_FUNCTION_MAP;
+
+    /**
+     * commands that change the collection
+     */
+    private static final Set<String> MUTATING_COMMANDS = Set.of("add", "update", "remove_by_id", "clear",
+            "remove_greater", "remove_lower", "import_xml", "import");
+    /**
+     * commands that are not available to network clients (see executeRemote):
+     * they stop the program or read and write files of the server
+     */
+    private static final Set<String> LOCAL_COMMANDS = Set.of("exit", "execute_script", "execute_batch",
+            "save", "export_xml", "import_xml", "import", "generate");
+    private static final String BY_MPAA_RATING = "by_mpaa_rating";
+    private static final int HISTOGRAM_BAR_WIDTH = 40;
     private static final String HELP_INFO =
                     "help : вывести справку по доступным командам\n" +
                     "info : вывести в стандартный поток вывода информацию о коллекции (тип, дата инициализации, количество элементов и т.д.)\n" +
-                    "show : вывести в стандартный поток вывода все элементы коллекции в строковом представлении\n" +
+                    "show [offset] [limit] : вывести в стандартный поток вывода все элементы коллекции (или limit элементов, начиная с offset) в строковом представлении\n" +
                     "add {element} : добавить новый элемент в коллекцию\n" +
                     "update id {element} : обновить значение элемента коллекции, id которого равен заданному\n" +
                     "remove_by_id id : удалить элемент из коллекции по его id\n" +
                     "clear : очистить коллекцию\n" +
                     "save : сохранить коллекцию в файл\n" +
                     "execute_script file_name : считать и исполнить скрипт из указанного файла. В скрипте содержатся команды в таком же виде, в котором их вводит пользователь в интерактивном режиме.\n" +
+                    "execute_batch file_name : исполнить скрипт из указанного файла в пакетном режиме (без подсказок ввода, с буферизованным выводом)\n" +
                     "exit : завершить программу (без сохранения в файл)\n" +
                     "head : вывести первый элемент коллекции\n" +
                     "remove_greater {element} : удалить из коллекции все элементы, превышающие заданный\n" +
                     "remove_lower {element} : удалить из коллекции все элементы, меньшие, чем заданный\n" +
                     "max_by_creation_date : вывести любой объект из коллекции, значение поля creationDate которого является максимальным\n" +
-                    "count_by_mpaa_rating mpaaRating : вывести количество элементов, значение поля mpaaRating которых равно заданному\n" +
-                    "filter_by_mpaa_rating mpaaRating : вывести элементы, значение поля mpaaRating которых равно заданному\n";
+                    "min_by_creation_date : вывести любой объект из коллекции, значение поля creationDate которого является минимальным\n" +
+                    "filter_by_creation_date from to : вывести элементы, значение поля creationDate которых лежит в промежутке от from до to включительно (формат yyyy-mm-dd)\n" +
+                    "count_by_mpaa_rating mpaaRating : вывести количество элементов, значение поля mpaaRating которых равно заданному (null - без рейтинга)\n" +
+                    "filter_by_mpaa_rating mpaaRating : вывести элементы, значение поля mpaaRating которых равно заданному (null - без рейтинга)\n" +
+                    "count_by_screenwriter name : вывести количество элементов, имя сценариста которых равно заданному (без имени - без сценариста)\n" +
+                    "filter_by_screenwriter name : вывести элементы, имя сценариста которых равно заданному (без имени - без сценариста)\n" +
+                    "query expression : вывести элементы, удовлетворяющие условию, например: oscarsCount > 5 and length < 120 and screenwriter.nationality = FRANCE (операторы = != < <= > >=, and, or, not, скобки)\n" +
+                    "sum field [by_mpaa_rating] : вывести сумму значений числового поля (oscarsCount, goldenPalmCount, length, x, y) всех элементов (или элементов каждого mpaaRating)\n" +
+                    "avg field [by_mpaa_rating] : вывести среднее значение числового поля всех элементов (или элементов каждого mpaaRating)\n" +
+                    "min field [by_mpaa_rating] : вывести минимальное значение числового поля (или минимальное для каждого mpaaRating)\n" +
+                    "max field [by_mpaa_rating] : вывести максимальное значение числового поля (или максимальное для каждого mpaaRating)\n" +
+                    "histogram field [buckets] [by_mpaa_rating] : вывести гистограмму значений числового поля из buckets равных интервалов (по умолчанию " + Aggregates.DEFAULT_HISTOGRAM_BUCKETS + ")\n" +
+                    "export_xml file_name : сохранить коллекцию в XML файл\n" +
+                    "import_xml file_name : добавить в коллекцию элементы из XML файла\n" +
+                    "import file_name : добавить в коллекцию элементы из CSV (строки в формате {element}) или JSON lines файла\n" +
+                    "generate count file_name [options] : записать в файл сгенерированную коллекцию из count элементов (коллекция в памяти не меняется)\n" +
+                    "\n{element} вводится по полям или одной строкой в той же строке, что и команда:\n" +
+                    MovieUtil.LITERAL_FORMAT + "\n" +
+                    "(пустые mpaaRating и nationality - null, поле с запятыми или кавычками заключается в двойные кавычки)\n";
     static {
-        Map<String, BiConsumer<String, Scanner>> cfmTemp = new HashMap();
+        Map<String, BiConsumer<String, LineReader>> cfmTemp = new HashMap();
         cfmTemp.put("help", CommandExecutor::help);
         cfmTemp.put("info", CommandExecutor::info);
         cfmTemp.put("show", CommandExecutor::show);
@@ -44,20 +78,35 @@ public class CommandExecutor {
         cfmTemp.put("clear", CommandExecutor::clear);
         cfmTemp.put("save", CommandExecutor::save);
         cfmTemp.put("execute_script", CommandExecutor::executeScript);
+        cfmTemp.put("execute_batch", CommandExecutor::executeBatch);
         cfmTemp.put("exit", CommandExecutor::exit);
         cfmTemp.put("head", CommandExecutor::head);
         cfmTemp.put("remove_greater", CommandExecutor::removeGreater);
         cfmTemp.put("remove_lower", CommandExecutor::removeLower);
         cfmTemp.put("max_by_creation_date", CommandExecutor::maxByCreationDate);
+        cfmTemp.put("min_by_creation_date", CommandExecutor::minByCreationDate);
+        cfmTemp.put("filter_by_creation_date", CommandExecutor::filterByCreationDate);
         cfmTemp.put("count_by_mpaa_rating", CommandExecutor::countByMpaaRating);
         cfmTemp.put("filter_by_mpaa_rating", CommandExecutor::filterByMpaaRating);
+        cfmTemp.put("count_by_screenwriter", CommandExecutor::countByScreenwriter);
+        cfmTemp.put("filter_by_screenwriter", CommandExecutor::filterByScreenwriter);
+        cfmTemp.put("query", CommandExecutor::query);
+        cfmTemp.put("sum", CommandExecutor::sum);
+        cfmTemp.put("avg", CommandExecutor::avg);
+        cfmTemp.put("min", CommandExecutor::min);
+        cfmTemp.put("max", CommandExecutor::max);
+        cfmTemp.put("histogram", CommandExecutor::histogram);
+        cfmTemp.put("export_xml", CommandExecutor::exportXml);
+        cfmTemp.put("import_xml", CommandExecutor::importXml);
+        cfmTemp.put("import", CommandExecutor::importRecords);
+        cfmTemp.put("generate", CommandExecutor::generate);
         COMMAND_FUNCTION_MAP = Collections.unmodifiableMap(cfmTemp);
     }
 
     /*
    Additional task. delete later!
     */
-    public static final Map<String, BiConsumer<String, Scanner>> returnMap() {
+    public static final Map<String, BiConsumer<String, LineReader>> returnMap() {
         return COMMAND_FUNCTION_MAP;
     }
 
@@ -67,11 +116,12 @@ public class CommandExecutor {
      * Starts an endless loop of receiving commands from the console
      * @param scan console scanner
      */
-    public static void startExecution(Scanner scan) {
+    public static void startExecution(LineReader scan) {
         do {
             if (scan.hasNext()) {
                 executeCommand(scan);
             } else {
+                Autosave.stop();
                 System.out.println("The program terminated.");
                 System.exit(0);
             }
@@ -82,7 +132,7 @@ public class CommandExecutor {
      * execute script from file
      * @param scan script file scanner
      */
-    public static void executeScriptCommands(Scanner scan) {
+    public static void executeScriptCommands(LineReader scan) {
         while (scan.hasNext()) {
             executeCommand(scan);
         }
@@ -92,30 +142,95 @@ public class CommandExecutor {
      * execute script from file
      * @param scan script file scanner
      */
-    private static void executeScript(String params, Scanner scan) {
+    private static void executeScript(String params, LineReader scan) {
         if (UniqueValuesUtil.isScriptAlreadyRunning(params)) {
-            System.out.println();
+            OutputSink.println();
             throw new IllegalArgumentException("Infinite loop detected, command 'execute_script " + params + "' skipped" + "\n");
         }
         FileAccessor.readScript(params);
     }
 
+    /**
+     * execute script from file in batch mode
+     * @param scan script file reader
+     */
+    private static void executeBatch(String params, LineReader scan) {
+        if (UniqueValuesUtil.isScriptAlreadyRunning(params)) {
+            OutputSink.println();
+            throw new IllegalArgumentException("Infinite loop detected, command 'execute_batch " + params + "' skipped" + "\n");
+        }
+        FileAccessor.readBatch(params);
+    }
+
+    /**
+     * execute commands of a script without requests for input (batch mode):
+     * the output is passed to the console in big blocks and the journal records
+     * of consecutive changing commands are written at once
+     * @param scan script file reader
+     */
+    public static void executeBatchCommands(LineReader scan) {
+        boolean wasPromptEnabled = OutputSink.setPromptEnabled(false);
+        try {
+            while (scan.hasNext()) {
+                if (!execute(scan.nextLine(), scan)) {
+                    Journal.flush();
+                }
+            }
+        } finally {
+            Journal.flush();
+            OutputSink.flush();
+            OutputSink.setPromptEnabled(wasPromptEnabled);
+        }
+    }
+
+    /**
+     * execute one command line of a network client (see Server).
+     * Elements are given only as one-line literals, the commands
+     * that stop the program or access files are not available
+     * @param line command name and additional params
+     * @return true if the command changes the collection
+     */
+    public static boolean executeRemote(String line) {
+        String command = line.trim();
+        int space = command.indexOf(' ');
+        if (LOCAL_COMMANDS.contains(space < 0 ? command : command.substring(0, space))) {
+            OutputSink.println("The error of the command" + ": " + "the command is not available over the network");
+            return false;
+        }
+        return execute(command, null);
+    }
+
     /**
      * execute one command from scanner
      * @param scan script file scanner
-     * @throws IllegalArgumentException for invalid command name
      */
-    private static void executeCommand(Scanner scan) {
+    private static void executeCommand(LineReader scan) {
+        execute(scan.nextLine(), scan);
+        OutputSink.flush();
+        Journal.flush();
+    }
 
-            String[] currentCommand = (scan.nextLine().trim() + " ").split(" ", 2);
-            try {
-                Optional.ofNullable(COMMAND_FUNCTION_MAP.get(currentCommand[0]))
-                        .orElseThrow(() -> new IllegalArgumentException("Invalid command, type \"help\" for information about commands"))
-                        .accept(currentCommand[1].trim(), scan);
-            } catch (Exception e) {
-//            e.printStackTrace();
-            System.out.println("The error of the command" + ": " + e.getMessage());
+    /**
+     * execute one command line, errors are printed
+     * @param line command name and additional params
+     * @param scan source of the params of an object (for example for 'add' command)
+     * @return true if the command changes the collection
+     */
+    private static boolean execute(String line, LineReader scan) {
+        String command = line.trim();
+        int space = command.indexOf(' ');
+        String name = space < 0 ? command : command.substring(0, space);
+        try {
+            BiConsumer<String, LineReader> function = COMMAND_FUNCTION_MAP.get(name);
+            if (function == null) {
+                throw new IllegalArgumentException("Invalid command, type \"help\" for information about commands");
             }
+            function.accept(space < 0 ? "" : command.substring(space + 1).trim(), scan);
+        } catch (Exception e) {
+//            e.printStackTrace();
+            OutputSink.println("The error of the command" + ": " + e.getMessage());
+        }
+        return MUTATING_COMMANDS.contains(name);
     }
 
     /**
@@ -134,9 +249,9 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-   private static void help(String params, Scanner scan) {
+   private static void help(String params, LineReader scan) {
        isAdditionalParamsEmpty(params);
-       System.out.println(HELP_INFO);
+       OutputSink.println(HELP_INFO);
     }
 
     /**
@@ -144,9 +259,9 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void info(String params, Scanner scan) {
+    private static void info(String params, LineReader scan) {
         isAdditionalParamsEmpty(params);
-        System.out.println("PriorityQueue\nDate: " + MovieStorage.getInitDate() + "\nCount of elements: " + MovieStorage.size());
+        OutputSink.println(MovieStorage.getStorageType() + "\nDate: " + MovieStorage.getInitDate() + "\nCount of elements: " + MovieStorage.size());
     }
 
     /**
@@ -154,15 +269,31 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void show(String params, Scanner scan) {
-        isAdditionalParamsEmpty(params);
-        StringBuilder sb = new StringBuilder();
-        List<Movie> movies = MovieStorage.getSortedListByOscarCount();
-        for (Movie movie : movies) {
-            String writer = movie.getScreenwriter() != null ? movie.getScreenwriter().toString() : "";
-            sb.append(movie).append("\n").append(writer).append("\n");
+    private static void show(String params, LineReader scan) {
+        String[] page = params.isEmpty() ? new String[0] : params.split("\\s+");
+        if (page.length > 2) {
+            throw new IllegalArgumentException("Offset and limit are expected");
+        }
+        int offset = page.length > 0 ? parseNonNegative(page[0]) : 0;
+        int limit = page.length > 1 ? parseNonNegative(page[1]) : Integer.MAX_VALUE;
+        Iterator<Movie> iterator = MovieStorage.getIterator(offset);
+        for (int i = 0; i < limit && iterator.hasNext(); i++) {
+            OutputSink.printWithScreenwriter(iterator.next());
         }
-        System.out.println(sb);
+        OutputSink.println();
+    }
+
+    /**
+     * @param value number of a command
+     * @return number
+     * @throws IllegalArgumentException for negative number or not a number
+     */
+    private static int parseNonNegative(String value) {
+        int number = Integer.parseInt(value);
+        if (number < 0) {
+            throw new IllegalArgumentException("Number can not be negative: " + number);
+        }
+        return number;
     }
 
     /**
@@ -170,10 +301,9 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void add(String params, Scanner scan) {
-        isAdditionalParamsEmpty(params);
-        MovieStorage.add(MovieUtil.createMovie(scan));
-        System.out.println("The film is added to the collection!");
+    private static void add(String params, LineReader scan) {
+        MovieStorage.add(readMovie(params, scan));
+        OutputSink.println("The film is added to the collection!");
     }
 
     /**
@@ -181,11 +311,12 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void update(String params, Scanner scan) {
-        int id = Integer.parseInt(params);
-        Movie movie = MovieUtil.createMovie(scan);
+    private static void update(String params, LineReader scan) {
+        int space = params.indexOf(' ');
+        int id = Integer.parseInt(space < 0 ? params : params.substring(0, space));
+        Movie movie = readMovie(space < 0 ? "" : params.substring(space + 1).trim(), scan);
         MovieStorage.update(id, movie);
-        System.out.println("The fields of the film updated!");
+        OutputSink.println("The fields of the film updated!");
     }
 
     /**
@@ -193,9 +324,9 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void removeById(String params, Scanner scan) {
+    private static void removeById(String params, LineReader scan) {
         MovieStorage.removeById(Integer.parseInt(params));
-        System.out.println("Removed by ID!");
+        OutputSink.println("Removed by ID!");
     }
 
     /**
@@ -203,10 +334,10 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void clear(String params, Scanner scan) {
+    private static void clear(String params, LineReader scan) {
         isAdditionalParamsEmpty(params);
         MovieStorage.clear();
-        System.out.println("The collection is cleaned of elements!");
+        OutputSink.println("The collection is cleaned of elements!");
     }
 
     /**
@@ -214,10 +345,13 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void save(String params, Scanner scan) {
+    private static void save(String params, LineReader scan) {
         isAdditionalParamsEmpty(params);
-        FileAccessor.writeXmlFile();
-        System.out.println("The collection is saved!");
+        if (FileAccessor.save()) {
+            OutputSink.println("The collection is saved!");
+        } else {
+            OutputSink.println("The collection is not saved!");
+        }
     }
 
     /**
@@ -225,9 +359,11 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void exit(String params, Scanner scan) {
+    private static void exit(String params, LineReader scan) {
         isAdditionalParamsEmpty(params);
-        System.out.println("The program terminated.");
+        Autosave.stop();
+        OutputSink.println("The program terminated.");
+        OutputSink.flush();
         System.exit(0);
     }
 
@@ -236,9 +372,14 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void head(String params, Scanner scan) {
+    private static void head(String params, LineReader scan) {
         isAdditionalParamsEmpty(params);
-        System.out.println(MovieStorage.getIterator().next().toString());
+        Movie movie = MovieStorage.head();
+        if (movie != null) {
+            OutputSink.println(movie);
+        } else {
+            OutputSink.println("No such element in collection.");
+        }
     }
 
     /**
@@ -246,9 +387,9 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void removeGreater(String params, Scanner scan) {
-        MovieStorage.removeGreater(MovieUtil.createMovie(scan));
-        System.out.println("Greater elements are removed!");
+    private static void removeGreater(String params, LineReader scan) {
+        MovieStorage.removeGreater(readMovie(params, scan));
+        OutputSink.println("Greater elements are removed!");
     }
 
     /**
@@ -256,9 +397,9 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void removeLower(String params, Scanner scan) {
-        MovieStorage.removeLower(MovieUtil.createMovie(scan));
-        System.out.println("Lower elements are removed!");
+    private static void removeLower(String params, LineReader scan) {
+        MovieStorage.removeLower(readMovie(params, scan));
+        OutputSink.println("Lower elements are removed!");
     }
 
     /**
@@ -266,9 +407,35 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void maxByCreationDate(String params, Scanner scan) {
+    private static void maxByCreationDate(String params, LineReader scan) {
+        isAdditionalParamsEmpty(params);
+        OutputSink.println(MovieStorage.getMaxCreationDate());
+    }
+
+    /**
+     * min_by_creationDate command
+     * @param params command additional params (id, filename etc.)
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void minByCreationDate(String params, LineReader scan) {
         isAdditionalParamsEmpty(params);
-        System.out.println(MovieStorage.getMaxCreationDate());
+        OutputSink.println(MovieStorage.getMinCreationDate());
+    }
+
+    /**
+     * filter_by_creation_date command
+     * @param params command additional params (id, filename etc.)
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void filterByCreationDate(String params, LineReader scan) {
+        String[] dates = params.split("\\s+");
+        if (dates.length != 2) {
+            throw new IllegalArgumentException("Two dates are expected: from to");
+        }
+        List<Movie> list = MovieStorage.filterByCreationDate(LocalDate.parse(dates[0]), LocalDate.parse(dates[1]));
+        for (Movie movie : list) {
+            OutputSink.println(movie);
+        }
     }
 
     /**
@@ -276,8 +443,9 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void countByMpaaRating(String params, Scanner scan) {
-        System.out.println("With the rating '" + params + "' exists " + MovieStorage.countByMpaaRating(MpaaRating.valueOf(params)) + " element(s).");
+    private static void countByMpaaRating(String params, LineReader scan) {
+        MpaaRating rating = parseMpaaRating(params);
+        OutputSink.println("With the rating '" + rating + "' exists " + MovieStorage.countByMpaaRating(rating) + " element(s).");
     }
 
     /**
@@ -285,10 +453,218 @@ public class CommandExecutor {
      * @param params command additional params (id, filename etc.)
      * @param scan helps to get the params of an object (for example for 'add' command)
      */
-    private static void filterByMpaaRating(String params, Scanner scan) {
-        List<Movie> list = MovieStorage.filterByMpaaRating(MpaaRating.valueOf(params));
+    private static void filterByMpaaRating(String params, LineReader scan) {
+        List<Movie> list = MovieStorage.filterByMpaaRating(parseMpaaRating(params));
+        for (Movie movie : list) {
+            OutputSink.println(movie);
+        }
+    }
+
+    /**
+     * count_by_screenwriter command
+     * @param params screenwriter name, empty for movies without screenwriter
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void countByScreenwriter(String params, LineReader scan) {
+        String name = params.isEmpty() ? null : params;
+        OutputSink.println("With the screenwriter '" + name + "' exists " + MovieStorage.countByScreenwriter(name) + " element(s).");
+    }
+
+    /**
+     * filter_by_screenwriter command
+     * @param params screenwriter name, empty for movies without screenwriter
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void filterByScreenwriter(String params, LineReader scan) {
+        List<Movie> list = MovieStorage.filterByScreenwriter(params.isEmpty() ? null : params);
         for (Movie movie : list) {
-            System.out.println(movie);
+            OutputSink.println(movie);
         }
     }
+
+    /**
+     * query command
+     * @param params query expression (see MovieQuery)
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void query(String params, LineReader scan) {
+        List<Movie> list = MovieQuery.compile(params).execute();
+        for (Movie movie : list) {
+            OutputSink.println(movie);
+        }
+    }
+
+    /**
+     * sum command
+     * @param params numeric field name, optionally by_mpaa_rating
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void sum(String params, LineReader scan) {
+        printAggregate("sum", params, (stats, group) -> stats.sum(group).toString());
+    }
+
+    /**
+     * avg command
+     * @param params numeric field name, optionally by_mpaa_rating
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void avg(String params, LineReader scan) {
+        printAggregate("avg", params, (stats, group) -> String.valueOf(stats.avg(group)));
+    }
+
+    /**
+     * min command
+     * @param params numeric field name, optionally by_mpaa_rating
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void min(String params, LineReader scan) {
+        printAggregate("min", params, (stats, group) -> String.valueOf(stats.min(group)));
+    }
+
+    /**
+     * max command
+     * @param params numeric field name, optionally by_mpaa_rating
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void max(String params, LineReader scan) {
+        printAggregate("max", params, (stats, group) -> String.valueOf(stats.max(group)));
+    }
+
+    /**
+     * prints an aggregate of all movies or of the movies of every rating
+     * @param name command name
+     * @param params numeric field name, optionally by_mpaa_rating
+     * @param value formats the aggregate of a group
+     * @throws IllegalArgumentException illegal params
+     */
+    private static void printAggregate(String name, String params, BiFunction<Aggregates.Stats, Integer, String> value) {
+        String[] words = params.split("\\s+");
+        if (params.isEmpty() || words.length > 2 || (words.length == 2 && !words[1].equals(BY_MPAA_RATING))) {
+            throw new IllegalArgumentException("Expected: " + name + " field [" + BY_MPAA_RATING + "]");
+        }
+        Aggregates.Field field = Aggregates.Field.parse(words[0]);
+        boolean isGrouped = words.length == 2;
+        Aggregates.Stats stats = Aggregates.stats(field, isGrouped);
+        for (int group = 0; group < stats.groups(); group++) {
+            String result = stats.count(group) == 0 ? "no elements" : value.apply(stats, group);
+            OutputSink.println(name + " of " + field.getFieldName()
+                    + (isGrouped ? " with the rating '" + Aggregates.groupName(group) + "'" : "") + ": " + result);
+        }
+    }
+
+    /**
+     * histogram command
+     * @param params numeric field name, optionally number of buckets and by_mpaa_rating
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void histogram(String params, LineReader scan) {
+        List<String> words = new ArrayList<>(Arrays.asList(params.split("\\s+")));
+        boolean isGrouped = words.size() > 1 && words.get(words.size() - 1).equals(BY_MPAA_RATING);
+        if (isGrouped) {
+            words.remove(words.size() - 1);
+        }
+        if (params.isEmpty() || words.size() > 2) {
+            throw new IllegalArgumentException("Expected: histogram field [buckets] [" + BY_MPAA_RATING + "]");
+        }
+        Aggregates.Field field = Aggregates.Field.parse(words.get(0));
+        int buckets = words.size() > 1 ? parseNonNegative(words.get(1)) : Aggregates.DEFAULT_HISTOGRAM_BUCKETS;
+        Aggregates.Histogram histogram = Aggregates.histogram(field, buckets, isGrouped);
+        if (histogram == null) {
+            OutputSink.println("No such element in collection.");
+            return;
+        }
+        long maxCount = 1;
+        for (int group = 0; group < histogram.groups(); group++) {
+            for (int bucket = 0; bucket < histogram.buckets(); bucket++) {
+                maxCount = Math.max(maxCount, histogram.count(group, bucket));
+            }
+        }
+        for (int group = 0; group < histogram.groups(); group++) {
+            OutputSink.println("histogram of " + field.getFieldName()
+                    + (isGrouped ? " with the rating '" + Aggregates.groupName(group) + "'" : "") + ":");
+            for (int bucket = 0; bucket < histogram.buckets(); bucket++) {
+                long count = histogram.count(group, bucket);
+                OutputSink.println("[" + histogram.lowerBound(bucket) + ", " + histogram.upperBound(bucket) + "]: "
+                        + count + " " + "#".repeat((int) (count * HISTOGRAM_BAR_WIDTH / maxCount)));
+            }
+        }
+    }
+
+    /**
+     * reads the element of a command: from the same line if it is given there
+     * as a literal (see MovieUtil.LITERAL_FORMAT), otherwise field by field
+     * @param literal element literal or empty
+     * @param scan source of the fields, null if the literal is required (network clients)
+     * @return movie
+     */
+    private static Movie readMovie(String literal, LineReader scan) {
+        if (literal.isEmpty() && scan == null) {
+            throw new IllegalArgumentException("Element is expected on the line of the command: " + MovieUtil.LITERAL_FORMAT);
+        }
+        return literal.isEmpty() ? MovieUtil.createMovie(scan) : MovieUtil.parseMovie(literal);
+    }
+
+    /**
+     * parses mpaa rating of a command
+     * @param params rating name, empty or "null" for movies without rating
+     * @return rating or null
+     * @throws IllegalArgumentException for unknown rating
+     */
+    private static MpaaRating parseMpaaRating(String params) {
+        if (params.isEmpty() || params.equals("null")) {
+            return null;
+        }
+        return MpaaRating.valueOf(params);
+    }
+
+    /**
+     * export_xml command
+     * @param params command additional params (id, filename etc.)
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void exportXml(String params, LineReader scan) {
+        if (params.isEmpty()) {
+            throw new IllegalArgumentException("File name is expected");
+        }
+        if (FileAccessor.writeXmlFile(params)) {
+            OutputSink.println("The collection is exported to '" + params + "'!");
+        }
+    }
+
+    /**
+     * import_xml command
+     * @param params command additional params (id, filename etc.)
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void importXml(String params, LineReader scan) {
+        if (params.isEmpty()) {
+            throw new IllegalArgumentException("File name is expected");
+        }
+        if (FileAccessor.importXml(params)) {
+            OutputSink.println("The movies are imported from '" + params + "'!");
+        } else {
+            OutputSink.println("'" + params + "'" + " structure is damaged!");
+        }
+    }
+
+    /**
+     * import command
+     * @param params command additional params (id, filename etc.)
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void importRecords(String params, LineReader scan) {
+        if (params.isEmpty()) {
+            throw new IllegalArgumentException("File name is expected");
+        }
+        FileAccessor.importRecords(params);
+    }
+
+    /**
+     * generate command
+     * @param params command additional params (id, filename etc.)
+     * @param scan helps to get the params of an object (for example for 'add' command)
+     */
+    private static void generate(String params, LineReader scan) {
+        MovieGenerator.generate(params.split("\\s+"));
+    }
 }
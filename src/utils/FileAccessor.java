@@ -2,277 +2,760 @@ package utils;
 
 import model.*;
 
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
 import javax.xml.stream.*;
-import javax.xml.stream.events.XMLEvent;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.io.InputStreamReader;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.function.BiConsumer;
 
 /**
  * implements reading and writing files
  */
 public class FileAccessor {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    /**
+     * movies of the import command are added to the storage by batches of this size
+     */
+    private static final int IMPORT_BATCH_SIZE = 10_000;
+    private static final int MAX_REPORTED_ROWS = 100;
 
     /**
-     * defines the mapping of movie params its parsing
+     * files with this extension are stored as MovieSnapshot, others as XML
      */
-    private static final Map<String, BiConsumer<MovieUtil.MovieBuilder, XMLEventReader>> MOVIE_PARAMS_PARSER;
+    public static final String SNAPSHOT_EXTENSION = ".bin";
 
+    private static String fileName;
     /**
-     * defines the mapping of movie person its parsing
+     * saves of the command thread and of the autosave thread do not overlap
      */
-    private static final Map<String, BiConsumer<PersonUtil.PersonBuilder, XMLEventReader>> PERSON_PARAMS_PARSER;
+    private static final Object SAVE_LOCK = new Object();
+    /**
+     * version of the storage (see MovieStorage.getVersion) written by the last save
+     */
+    private static volatile long savedVersion = -1;
+    private static String schemaFileName = "config.xsd";
+    private static boolean isParallelLoad = false;
+    private static boolean isLazyLoad = false;
 
-    static {
-        Map<String, BiConsumer<MovieUtil.MovieBuilder, XMLEventReader>> pppTemp = new HashMap<>();
+    /**
+     * save fileName for reading and writing
+     *
+     * @param fileName path to xml or snapshot file
+     */
+    public static void init(String fileName) {
+        FileAccessor.fileName = fileName;
+    }
 
-        pppTemp.put("movie", (mb, xmlEventReader) -> {});
-        pppTemp.put("id", (mb, xmlEventReader) -> mb.id = Integer.valueOf(xmlToStr(xmlEventReader)));
-        pppTemp.put("name", (mb, xmlEventReader) -> mb.name = xmlToStr(xmlEventReader));
-        pppTemp.put("coordinates", (mb, xmlEventReader) -> mb.coordinates = parseCoordinates(xmlEventReader));
-        pppTemp.put("creationDate", (mb, xmlEventReader) -> mb.creationDate = LocalDate.parse(xmlToStr(xmlEventReader)));
-        pppTemp.put("oscarsCount", (mb, xmlEventReader) -> mb.oscarsCount = Integer.valueOf(xmlToStr(xmlEventReader)));
-        pppTemp.put("goldenPalmCount", (mb, xmlEventReader) -> mb.goldenPalmCount = Integer.valueOf(xmlToStr(xmlEventReader)));
-        pppTemp.put("length", (mb, xmlEventReader) -> mb.length = Long.valueOf(xmlToStr(xmlEventReader)));
-        pppTemp.put("mpaaRating", (pb, xmlEventReader) -> {
-            final String xmlToStr = xmlToStr(xmlEventReader);
-            pb.mpaaRating = xmlToStr != null ? MpaaRating.valueOf(xmlToStr) : null;
-        });
-        pppTemp.put("screenwriter", (pb, xmlEventReader) -> pb.screenwriter = parsePerson(xmlEventReader));
+    /**
+     * @param fileName path to file
+     * @return true if the file is a binary snapshot (by extension)
+     */
+    public static boolean isSnapshotFile(String fileName) {
+        return fileName.endsWith(SNAPSHOT_EXTENSION);
+    }
 
-        MOVIE_PARAMS_PARSER = Collections.unmodifiableMap(pppTemp);
+    /**
+     * Load the collection from the file (specified in init),
+     * XML files are validated against the scheme
+     *
+     * @param schemaFileName path to xsd scheme
+     * @return true if the file is valid and loaded
+     */
+    public static boolean load(String schemaFileName) {
+        FileAccessor.schemaFileName = schemaFileName;
+        try {
+            return isSnapshotFile(fileName) ? readSnapshotFile() : readValidatedXmlFile(schemaFileName);
+        } finally {
+            // loaded before the commands start, the messages go out in order with the startup output
+            OutputSink.flush();
+        }
+    }
 
-        Map<String, BiConsumer<PersonUtil.PersonBuilder, XMLEventReader>> oppTemp = new HashMap<>();
+    /**
+     * saves the collection to the file (specified in init) in its format:
+     * the changes are committed to the journal,
+     * the full file is rewritten when the journal is too big
+     *
+     * @return true if the file is written
+     */
+    public static boolean save() {
+        return save(false);
+    }
 
-        oppTemp.put("name", (pb, xmlEventReader) -> pb.name = xmlToStr(xmlEventReader));
-        oppTemp.put("weight", (pb, xmlEventReader) -> pb.weight = Integer.valueOf(xmlToStr(xmlEventReader)));
-        oppTemp.put("eyeColor", (ob, xmlEventReader) -> ob.eyeColor = Color.valueOf(xmlToStr(xmlEventReader)));
-        oppTemp.put("hairColor", (ob, xmlEventReader) -> ob.hairColor = Color.valueOf(xmlToStr(xmlEventReader)));
-        oppTemp.put("nationality", (ob, xmlEventReader) -> {
-            final String xmlToStr = xmlToStr(xmlEventReader);
-            ob.nationality = xmlToStr != null ? Country.valueOf(xmlToStr) : null;
-        });
+    /**
+     * saves the collection if it has changed since the last save (see Autosave)
+     *
+     * @return true if the file is written or there is nothing to save
+     */
+    static boolean autosave() {
+        return save(true);
+    }
 
-        PERSON_PARAMS_PARSER = Collections.unmodifiableMap(oppTemp);
+    /**
+     * The collection is cut at one point under the storage lock: the journal gets
+     * a commit mark and, for a full rewrite, a snapshot of the storage is taken.
+     * The disk work is done after the lock is released, so commands are not stopped by it.
+     * The journal is emptied only if nothing has changed during the rewrite,
+     * otherwise its committed part is replayed over the new file
+     *
+     * @param isChangedOnly skip saving if the collection has not changed since the last save
+     * @return true if the file is written or skipped
+     */
+    private static boolean save(boolean isChangedOnly) {
+        synchronized (SAVE_LOCK) {
+            if (isChangedOnly && MovieStorage.getVersion() == savedVersion) {
+                return true;
+            }
+            boolean isCompacting = !Journal.isOpen() || Journal.needsCompaction(new File(fileName).length());
+            SavePoint point = new SavePoint(isCompacting);
+            if (!point.isRewriting) {
+                if (Journal.sync()) {
+                    savedVersion = point.version;
+                    return true;
+                }
+                point = new SavePoint(true);
+            }
+            if (!writeFile(fileName, point.movies)) {
+                return false;
+            }
+            long version = point.version;
+            MovieStorage.runExclusive(() -> {
+                if (MovieStorage.getVersion() == version) {
+                    Journal.reset();
+                }
+            });
+            savedVersion = version;
+            return true;
+        }
+    }
+
+    /**
+     * state of the collection at the moment of saving
+     */
+    private static class SavePoint {
+        private long version;
+        private boolean isRewriting;
+        private List<Movie> movies;
+
+        SavePoint(boolean isCompacting) {
+            MovieStorage.runExclusive(() -> {
+                version = MovieStorage.getVersion();
+                isRewriting = !Journal.mark() || isCompacting;
+                if (isRewriting) {
+                    movies = MovieStorage.snapshot();
+                }
+            });
+        }
     }
 
-    private static String xmlFileName;
+    /**
+     * replays the journal of the file (specified in init) and starts journaling changes
+     */
+    public static void openJournal() {
+        Journal.open(fileName);
+        savedVersion = MovieStorage.getVersion();
+    }
 
     /**
-     * save xml fileName for reading and writing
+     * switch loading to several cores (see ParallelXmlLoader)
      *
-     * @param xmlFileName path to xml file
+     * @param isParallelLoad true for parallel loading
      */
-    public static void init(String xmlFileName) {
-        FileAccessor.xmlFileName = xmlFileName;
+    public static void setParallelLoad(boolean isParallelLoad) {
+        FileAccessor.isParallelLoad = isParallelLoad;
     }
 
     /**
-     * Load movie from xml
+     * switch snapshot loading to lazy mode: the snapshot is memory-mapped
+     * and movies are decoded only when a command needs them (see MappedSnapshot)
+     *
+     * @param isLazyLoad true for lazy loading
      */
-    public static void readFromXmlFile() {
-        List<Movie> movies = new ArrayList<>();
-        try (FileInputStream stream = new FileInputStream(xmlFileName)) {
-            XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-            XMLEventReader xmlEventReader = xmlInputFactory.createXMLEventReader(stream);
+    public static void setLazyLoad(boolean isLazyLoad) {
+        FileAccessor.isLazyLoad = isLazyLoad;
+    }
 
-            while (xmlEventReader.hasNext()) {
+    /**
+     * adds movies from a CSV file (one movie literal per line, the first line may be a header
+     * starting with 'name') or a JSON lines file (see MovieJson) to the collection.
+     * Rows are checked by the same rules as in the model classes, rejected rows are reported
+     * and skipped, movies are added in batches (see MovieStorage.addAll)
+     *
+     * @param file path to a .csv, .jsonl or .json file
+     * @return true if the file is read to the end
+     * @throws IllegalArgumentException unknown file extension
+     */
+    public static boolean importRecords(String file) {
+        boolean isJson = file.endsWith(".jsonl") || file.endsWith(".json");
+        if (!isJson && !file.endsWith(".csv")) {
+            throw new IllegalArgumentException("File with the .csv, .jsonl or .json extension is expected");
+        }
+        List<Movie> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        int imported = 0;
+        int rejected = 0;
+        int row = 0;
+        long startTime = System.nanoTime();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                row++;
+                if (line.isBlank()) {
+                    continue;
+                }
                 try {
-                    Movie mov = parseMovie(xmlEventReader);
-                    if (mov != null) {
-                        movies.add(mov);
+                    if (isJson) {
+                        batch.add(MovieJson.parseMovie(line));
+                    } else {
+                        MovieLiteral fields = MovieUtil.splitLiteral(line);
+                        if (row == 1 && fields.text(0).equals("name")) {
+                            continue;
+                        }
+                        batch.add(MovieUtil.parseMovie(fields));
                     }
-                } catch (Exception e) {
-//                    e.printStackTrace();
-//                    System.out.println(e.getClass().getName() + ": " + e.getMessage());
-                    System.out.println("Reading error from XML file, element missed" + ": " + e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    if (++rejected <= MAX_REPORTED_ROWS) {
+                        OutputSink.println("Row " + row + " is rejected" + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    imported += batch.size();
+                    MovieStorage.addAll(batch);
+                    batch.clear();
                 }
+            }
+        } catch (IOException e) {
+            // the full batches are already in the collection, the started one is dropped
+            OutputSink.println("Reading error from file" + ": " + e.getMessage());
+            if (imported > 0) {
+                OutputSink.println("Imported " + imported + " movie(s) before the error.");
+            }
+            if (!batch.isEmpty()) {
+                OutputSink.println(batch.size() + " movie(s) read after the last full batch are not imported.");
+            }
+            return false;
+        }
+        imported += batch.size();
+        MovieStorage.addAll(batch);
+        if (rejected > MAX_REPORTED_ROWS) {
+            OutputSink.println("... " + (rejected - MAX_REPORTED_ROWS) + " more row(s) are rejected");
+        }
+        OutputSink.println(String.format("Imported %d movie(s), rejected %d row(s) in %.3f s.",
+                imported, rejected, (System.nanoTime() - startTime) / 1_000_000_000.0));
+        return true;
+    }
+
+    /**
+     * Load movie from xml
+     */
+    public static void readFromXmlFile() {
+        readFromXmlFile(new File(fileName), null);
+    }
+
+    /**
+     * Load movie from xml, validating the file against the scheme in the same pass.
+     * Movies are added to the storage only if the whole file is valid
+     *
+     * @param schemaFileName path to xsd scheme
+     * @return true if the file is valid and loaded
+     */
+    public static boolean readValidatedXmlFile(String schemaFileName) {
+        try {
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            return readFromXmlFile(new File(fileName), schemaFactory.newSchema(new File(schemaFileName)));
+        } catch (SAXException e) {
+            OutputSink.println("Scheme reading error" + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * adds movies from another XML file to the collection,
+     * the file is validated against the scheme
+     *
+     * @param xmlFile path to xml file
+     * @return true if the file is valid and loaded
+     */
+    public static boolean importXml(String xmlFile) {
+        try {
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            return readFromXmlFile(new File(xmlFile), schemaFactory.newSchema(new File(schemaFileName)));
+        } catch (SAXException e) {
+            OutputSink.println("Scheme reading error" + ": " + e.getMessage());
+            return false;
+        }
+    }
 
+    /**
+     * Load movie from xml
+     * @param file xml file
+     * @param schema scheme for validation, null to skip validation
+     * @return true if the file is read without structure errors
+     */
+    private static boolean readFromXmlFile(File file, Schema schema) {
+        List<Movie> movies = new ArrayList<>();
+        long startTime = System.nanoTime();
+        try {
+            if (isParallelLoad && file.length() >= 2 * ParallelXmlLoader.MIN_CHUNK_SIZE) {
+                movies = ParallelXmlLoader.load(file.toPath(), schema);
+            } else {
+                readFromXmlFile(file, schema, movies);
             }
         } catch (Exception e) {
 //            e.printStackTrace();
 //            System.out.println(e.getClass().getName() + ": " + e.getMessage());
-            System.out.println("Reading error from XML file" + ": " + e.getMessage());
+            OutputSink.println("Reading error from XML file" + ": " + e.getMessage());
+            if (schema != null) {
+                return false;
+            }
         }
-        movies.forEach(MovieStorage::add);
+        addLoaded(movies);
+        printThroughput(movies.size(), System.nanoTime() - startTime);
+        return true;
     }
 
     /**
-     * movie parsing
-     * @param xmlEventReader
-     * @return movie
+     * Load movies from the binary snapshot (specified in init),
+     * an empty file is an empty collection
+     * @return true if the snapshot is read
      */
-    private static Movie parseMovie(XMLEventReader xmlEventReader) {
-        MovieUtil.MovieBuilder mb = new MovieUtil.MovieBuilder();
-        try {
-            while (xmlEventReader.hasNext()) {
-                XMLEvent xmlEvent = xmlEventReader.nextEvent();
+    private static boolean readSnapshotFile() {
+        long startTime = System.nanoTime();
+        List<Movie> movies;
+        if (new File(fileName).length() == 0) {
+            return true;
+        }
+        if (isLazyLoad) {
+            try {
+                MappedSnapshot snapshot = MappedSnapshot.open(Paths.get(fileName));
+                MovieStorage.attach(snapshot);
+                OutputSink.println(String.format("Mapped %d movie(s) in %.3f s.", snapshot.size(),
+                        (System.nanoTime() - startTime) / 1_000_000_000.0));
+                return true;
+            } catch (Exception e) {
+//                e.printStackTrace();
+                OutputSink.println("Reading error from snapshot file" + ": " + e.getMessage());
+                return false;
+            }
+        }
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE)) {
+            movies = MovieSnapshot.read(stream);
+        } catch (Exception e) {
+//            e.printStackTrace();
+//            System.out.println(e.getClass().getName() + ": " + e.getMessage());
+            OutputSink.println("Reading error from snapshot file" + ": " + e.getMessage());
+            return false;
+        }
+        addLoaded(movies);
+        printThroughput(movies.size(), System.nanoTime() - startTime);
+        return true;
+    }
 
-                if (xmlEvent.isStartElement()) {
-                    String startElementStr = xmlEvent.asStartElement().getName().getLocalPart();
+    /**
+     * single thread loading
+     * @param file xml file
+     * @param schema scheme for validation, null to skip validation
+     * @param movies list for parsed movies
+     */
+    private static void readFromXmlFile(File file, Schema schema, List<Movie> movies) throws IOException, XMLStreamException {
+        try (FileInputStream stream = new FileInputStream(file)) {
+            XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+            XMLStreamReader xsr = xmlInputFactory.createXMLStreamReader(new BufferedInputStream(stream, BUFFER_SIZE));
+            if (schema != null) {
+                xsr = new ValidatingStreamReader(xsr, schema);
+            }
+            readMovies(xsr, movies);
+            xsr.close();
+        }
+    }
 
-                    Optional.ofNullable(MOVIE_PARAMS_PARSER.get(startElementStr))
-                            .ifPresent(cons -> cons.accept(mb, xmlEventReader));
+    /**
+     * adds loaded movies to the storage, reporting ids repeated in the file
+     * @param movies loaded movies
+     */
+    private static void addLoaded(List<Movie> movies) {
+        MovieIdIndex fileIds = new MovieIdIndex();
+        for (Movie movie : movies) {
+            if (fileIds.contains(movie.getId())) {
+                OutputSink.println("Illegal argument is found in the movie" + ": id " + movie.getId() + " is repeated");
+                MovieStorage.add(movie);
+            } else {
+                fileIds.put(movie);
+                MovieStorage.restore(movie);
+            }
+        }
+    }
 
-                }
-                if (xmlEvent.isEndElement() && xmlEvent.asEndElement().getName().getLocalPart().equals("movie")) {
-                    if (!UniqueValuesUtil.isMovieIdUnique(mb.id)) {
-//                        throw new IllegalArgumentException("Illegal Argument");
-                        System.out.println("Illegal argument is found in the movie");
-                    }
-                    return new Movie(mb.id,
-                            mb.name,
-                            mb.coordinates,
-                            mb.creationDate,
-                            mb.oscarsCount,
-                            mb.goldenPalmCount,
-                            mb.length,
-                            mb.mpaaRating,
-                            mb.screenwriter);
+    /**
+     * reads all movie elements with the cursor api
+     * @param xsr cursor over XML file
+     * @param movies list for parsed movies
+     * @throws XMLStreamException broken XML structure
+     */
+    static void readMovies(XMLStreamReader xsr, List<Movie> movies) throws XMLStreamException {
+        while (xsr.hasNext()) {
+            if (xsr.next() == XMLStreamConstants.START_ELEMENT && xsr.getLocalName().equals("movie")) {
+                try {
+                    movies.add(parseMovie(xsr));
+                } catch (XMLStreamException e) {
+                    throw e;
+                } catch (Exception e) {
+//                    e.printStackTrace();
+//                    System.out.println(e.getClass().getName() + ": " + e.getMessage());
+                    OutputSink.println("Reading error from XML file, element missed" + ": " + e.getMessage());
                 }
             }
-        } catch (XMLStreamException e) {
-//            e.printStackTrace();
-//            System.out.println(e.getClass().getName() + ": " + e.getMessage());
-            System.out.println("Illegal argument is found in the movie" + ": " + e.getMessage());
         }
-        return null;
     }
 
     /**
-     * person parsing
-     * @param xmlEventReader
+     * movie parsing, the cursor is on the movie start tag
+     * and is left on the movie end tag
+     * @param xsr cursor over XML file
+     * @return movie
+     * @throws XMLStreamException broken XML structure
+     */
+    private static Movie parseMovie(XMLStreamReader xsr) throws XMLStreamException {
+        MovieUtil.MovieBuilder mb = new MovieUtil.MovieBuilder();
+        while (xsr.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (xsr.getLocalName()) {
+                case "id":
+                    mb.id = Integer.valueOf(xsr.getElementText().trim());
+                    break;
+                case "name":
+                    mb.name = textOrNull(xsr);
+                    break;
+                case "coordinates":
+                    mb.coordinates = parseCoordinates(xsr);
+                    break;
+                case "creationDate":
+                    mb.creationDate = LocalDate.parse(xsr.getElementText().trim());
+                    break;
+                case "oscarsCount":
+                    mb.oscarsCount = Integer.valueOf(xsr.getElementText().trim());
+                    break;
+                case "goldenPalmCount":
+                    mb.goldenPalmCount = Integer.parseInt(xsr.getElementText().trim());
+                    break;
+                case "length":
+                    mb.length = Long.parseLong(xsr.getElementText().trim());
+                    break;
+                case "mpaaRating":
+                    String rating = textOrNull(xsr);
+                    mb.mpaaRating = rating != null ? MpaaRating.valueOf(rating) : null;
+                    break;
+                case "screenwriter":
+                    mb.screenwriter = parsePerson(xsr);
+                    break;
+                default:
+                    skipElement(xsr);
+            }
+        }
+        if (!UniqueValuesUtil.isMovieIdUnique(mb.id)) {
+//            throw new IllegalArgumentException("Illegal Argument");
+            OutputSink.println("Illegal argument is found in the movie");
+        }
+        return new Movie(mb.id,
+                mb.name,
+                mb.coordinates,
+                mb.creationDate,
+                mb.oscarsCount,
+                mb.goldenPalmCount,
+                mb.length,
+                mb.mpaaRating,
+                mb.screenwriter);
+    }
+
+    /**
+     * person parsing, the cursor is on the screenwriter start tag
+     * @param xsr cursor over XML file
      * @return person
+     * @throws XMLStreamException broken XML structure
      */
-    private static Person parsePerson(XMLEventReader xmlEventReader) {
+    private static Person parsePerson(XMLStreamReader xsr) throws XMLStreamException {
         PersonUtil.PersonBuilder pb = new PersonUtil.PersonBuilder();
-        try {
-            while (xmlEventReader.hasNext()) {
-                XMLEvent xmlEvent = xmlEventReader.nextEvent();
-
-                if (xmlEvent.isStartElement()) {
-                    String startElementStr = xmlEvent.asStartElement().getName().getLocalPart();
-                    Optional.ofNullable(PERSON_PARAMS_PARSER.get(startElementStr)).ifPresent(cons -> cons.accept(pb, xmlEventReader));
-                }
-                if (xmlEvent.isEndElement()
-                        && xmlEvent.asEndElement().getName().getLocalPart().equals("screenwriter")) {
-                    if (!UniqueValuesUtil.isPersonNameAvailable(pb.name)) {
-//                        throw new IllegalArgumentException("Illegal Argument");
-                        System.out.println("Illegal argument is found in the person");
-                    }
-                    return new Person(pb.name,
-                            pb.weight,
-                            pb.eyeColor,
-                            pb.hairColor,
-                            pb.nationality);
-                }
+        while (xsr.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (xsr.getLocalName()) {
+                case "name":
+                    pb.name = textOrNull(xsr);
+                    break;
+                case "weight":
+                    pb.weight = Integer.valueOf(xsr.getElementText().trim());
+                    break;
+                case "eyeColor":
+                    pb.eyeColor = Color.valueOf(xsr.getElementText().trim());
+                    break;
+                case "hairColor":
+                    pb.hairColor = Color.valueOf(xsr.getElementText().trim());
+                    break;
+                case "nationality":
+                    String nationality = textOrNull(xsr);
+                    pb.nationality = nationality != null ? Country.valueOf(nationality) : null;
+                    break;
+                default:
+                    skipElement(xsr);
             }
-        } catch (XMLStreamException e) {
-//            e.printStackTrace();
-//            System.out.println(e.getClass().getName() + ": " + e.getMessage());
-            System.out.println("Illegal argument is found in the person" + ": " + e.getMessage());
         }
-        return null;
+        return new Person(pb.name,
+                pb.weight,
+                pb.eyeColor,
+                pb.hairColor,
+                pb.nationality);
     }
 
     /**
-     * coordinates parsing
-     * @param xmlEventReader
+     * coordinates parsing, the cursor is on the coordinates start tag
+     * @param xsr cursor over XML file
      * @return coordinates
+     * @throws XMLStreamException broken XML structure
      */
-    private static Coordinates parseCoordinates(XMLEventReader xmlEventReader) {
+    private static Coordinates parseCoordinates(XMLStreamReader xsr) throws XMLStreamException {
         Integer x = 0;
         Long y = null;
-        try {
-            while (xmlEventReader.hasNext()) {
-                XMLEvent xmlEvent = xmlEventReader.nextEvent();
-
-                if (xmlEvent.isStartElement()) {
-                    String startElementStr = xmlEvent.asStartElement().getName().getLocalPart();
-                    if (startElementStr.equals("x")) {
-                        x = Integer.valueOf(xmlToStr(xmlEventReader));
-                    }
-                    if (startElementStr.equals("y")) {
-                        y = Long.valueOf(xmlToStr(xmlEventReader));
-                    }
-                }
-                if (xmlEvent.isEndElement() && xmlEvent.asEndElement().getName().getLocalPart().equals("coordinates")) {
-                    return new Coordinates(x, y);
-                }
+        while (xsr.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (xsr.getLocalName()) {
+                case "x":
+                    x = Integer.valueOf(xsr.getElementText().trim());
+                    break;
+                case "y":
+                    y = Long.valueOf(xsr.getElementText().trim());
+                    break;
+                default:
+                    skipElement(xsr);
             }
-        } catch (XMLStreamException e) {
-//            e.printStackTrace();
-//            System.out.println(e.getClass().getName() + ": " + e.getMessage());
-            System.out.println("Illegal argument is found in coordinates" + ": " + e.getMessage());
         }
-        return null;
+        return new Coordinates(x, y);
     }
 
     /**
-     * convert XML characters to string
-     *
-     * @param xmlEventReader iterator over XML file
-     * @return string representation of XML characters
+     * reads element text, empty element is treated as null
+     * @param xsr cursor on the start tag
+     * @return text or null
+     * @throws XMLStreamException broken XML structure
      */
-    private static String xmlToStr(XMLEventReader xmlEventReader) {
-        XMLEvent xmlEvent = null;
-        try {
-            xmlEvent = xmlEventReader.nextEvent();
-            return xmlEvent.asCharacters().getData();
-        } catch (XMLStreamException e) {
-            System.out.println("Cannot parse " + xmlEvent);
-//            System.out.println(e.getClass().getName() + ": " + e.getMessage());
-        } catch (ClassCastException ignore) {
+    private static String textOrNull(XMLStreamReader xsr) throws XMLStreamException {
+        String text = xsr.getElementText();
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * moves the cursor to the end tag of the current element
+     * @param xsr cursor on the start tag
+     * @throws XMLStreamException broken XML structure
+     */
+    private static void skipElement(XMLStreamReader xsr) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && xsr.hasNext()) {
+            int event = xsr.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
         }
-        return null;
+    }
+
+    /**
+     * prints load statistics
+     * @param count loaded movies
+     * @param nanos spent time
+     */
+    private static void printThroughput(int count, long nanos) {
+        double seconds = nanos / 1_000_000_000.0;
+        OutputSink.println(String.format("Loaded %d movie(s) in %.3f s (%.0f movies/sec).",
+                count, seconds, seconds > 0 ? count / seconds : 0.0));
     }
 
     /**
      * saves a collection of movies from memory to a file(specified in init)
+     *
+     * @return true if the file is written
      */
-    public static void writeXmlFile() {
-        XMLOutputFactory xof = XMLOutputFactory.newInstance();
-        XMLStreamWriter xsw;
-        try (FileWriter stream = new FileWriter(xmlFileName)) {
-            xsw = xof.createXMLStreamWriter(stream);
-            xsw.writeStartDocument();
-            XMLStreamWriter finalXsw = xsw;
+    public static boolean writeXmlFile() {
+        return writeXmlFile(fileName);
+    }
+
+    /**
+     * saves a collection of movies from memory to an XML file
+     *
+     * @param xmlFile path to xml file
+     * @return true if the file is written
+     */
+    public static boolean writeXmlFile(String xmlFile) {
+        return writeXmlFile(xmlFile, MovieStorage.snapshot());
+    }
+
+    /**
+     * writes movies to a file in the format of its extension (XML or binary snapshot),
+     * the movies are streamed and do not have to be in the storage
+     *
+     * @param file path to the file
+     * @param movies movies to write (a snapshot iterates them twice)
+     * @return true if the file is written
+     */
+    public static boolean writeFile(String file, Iterable<Movie> movies) {
+        return isSnapshotFile(file) ? writeSnapshotFile(file, movies) : writeXmlFile(file, movies);
+    }
+
+    /**
+     * writes generated movies to a file in the format of its extension,
+     * a binary snapshot is written without a dictionary of movie names
+     * (see MovieSnapshot.writeStreaming), so the memory does not grow with the number of movies
+     *
+     * @param file path to the file
+     * @param movies movies to write (a snapshot iterates them four times)
+     * @return true if the file is written
+     */
+    public static boolean writeGeneratedFile(String file, Iterable<Movie> movies) {
+        if (!isSnapshotFile(file)) {
+            return writeXmlFile(file, movies);
+        }
+        return writeAtomically(Paths.get(file), out -> MovieSnapshot.writeStreaming(movies, out));
+    }
+
+    private static boolean writeXmlFile(String xmlFile, Iterable<Movie> movies) {
+        return writeAtomically(Paths.get(xmlFile), out -> {
+            XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            xsw.writeStartDocument("UTF-8", "1.0");
             xsw.writeStartElement("movies");
-            List<Movie> movies = MovieStorage.getSortedListByOscarCount();
             for (Movie movie : movies) {
                 xsw.writeStartElement("movie");
-                movie.convertMovieToXml(finalXsw);
+                movie.convertMovieToXml(xsw);
                 xsw.writeEndElement();
             }
             xsw.writeEndDocument();
-            xsw.writeEndDocument();
-            xsw.flush();
             xsw.close();
+        });
+    }
+
+    private static boolean writeSnapshotFile(String file, Iterable<Movie> movies) {
+        return writeAtomically(Paths.get(file), out -> MovieSnapshot.write(movies, out));
+    }
+
+    /**
+     * writes a file through a buffer into a temporary file next to the target,
+     * forces it to the disk and renames it over the target,
+     * so a crash never leaves a truncated file
+     *
+     * @param target file to replace
+     * @param content writes the file content
+     * @return true if the file is written
+     */
+    private static boolean writeAtomically(Path target, FileContentWriter content) {
+        long startTime = System.nanoTime();
+        Path dir = target.toAbsolutePath().getParent();
+        Path temp = null;
+        try {
+            // created with the default rights (a temp file would be private to the owner)
+            temp = Files.createFile(dir.resolve(target.getFileName() + "." + System.nanoTime() + ".tmp"));
+            copyPermissions(target, temp);
+            try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+                 BufferedOutputStream out = new BufferedOutputStream(stream, WRITE_BUFFER_SIZE)) {
+                content.write(out);
+                out.flush();
+                stream.getFD().sync();
+            }
+            long bytes = Files.size(temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(dir);
+            long nanos = System.nanoTime() - startTime;
+            OutputSink.println(String.format("Saved %d bytes in %.1f ms (%.1f MB/sec).",
+                    bytes, nanos / 1_000_000.0, nanos > 0 ? bytes * 1000.0 / nanos : 0.0));
+            return true;
         } catch (Exception e) {
 //            e.printStackTrace();
 //            System.out.println(e.getClass().getName() + ": " + e.getMessage());
-            System.out.println("File write error" + ": " + e.getMessage());
+            OutputSink.println("File write error" + ": " + e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignore) {
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * keeps access rights of the replaced file (temporary files are private)
+     * @param from existing file
+     * @param to new file
+     */
+    private static void copyPermissions(Path from, Path to) {
+        try {
+            if (Files.exists(from)) {
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+            }
+        } catch (UnsupportedOperationException | IOException ignore) {
         }
     }
 
+    /**
+     * makes the rename durable (not supported on some platforms)
+     * @param dir directory of the renamed file
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * writes the content of a file
+     */
+    private interface FileContentWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
     /**
      * starts execution of a script in a file
      *
      * @param scriptFile path to script file
      */
     public static void readScript(String scriptFile) {
-        try (FileInputStream stream = new FileInputStream(scriptFile); InputStreamReader reader = new InputStreamReader(stream);
-             Scanner scan = new Scanner(reader)) {
+        readScript(scriptFile, false);
+    }
+
+    /**
+     * starts execution of a script in a file in batch mode (see CommandExecutor.executeBatchCommands)
+     *
+     * @param scriptFile path to script file
+     */
+    public static void readBatch(String scriptFile) {
+        readScript(scriptFile, true);
+    }
+
+    private static void readScript(String scriptFile, boolean isBatch) {
+        try (LineReader scan = new LineReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(scriptFile)), BUFFER_SIZE))) {
             UniqueValuesUtil.addScript(scriptFile);
-            CommandExecutor.executeScriptCommands(scan);
-            UniqueValuesUtil.removeScript(scriptFile);
+            try {
+                if (isBatch) {
+                    CommandExecutor.executeBatchCommands(scan);
+                } else {
+                    CommandExecutor.executeScriptCommands(scan);
+                }
+            } finally {
+                UniqueValuesUtil.removeScript(scriptFile);
+            }
         } catch (Exception e) {
 //            e.printStackTrace();
 //            System.out.println(e.getClass().getName() + ": " + e.getMessage());
-            System.out.println("Script reading error" + ": " + e.getMessage());
+            OutputSink.println("Script reading error" + ": " + e.getMessage());
         }
     }
 }
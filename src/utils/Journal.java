@@ -0,0 +1,311 @@
+package utils;
+
+import model.Movie;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only journal of collection changes, kept next to the collection file.
+ * Every change of MovieStorage is appended as a record and the records are
+ * flushed after each command. The save command appends a commit mark
+ * instead of rewriting the whole file; on startup the committed records are
+ * replayed on top of the last full file, records after the last commit mark
+ * (changes that were never saved) are dropped.
+ * Records are idempotent (movies are written whole, with their ids), so the
+ * journal may be replayed over a file that already contains its changes.
+ * When the journal grows big, save rewrites the full file and empties the journal.
+ * The journal is written by the command thread and committed by the autosave thread,
+ * so the methods are synchronized (sync runs without the monitor)
+ */
+public class Journal {
+    public static final String EXTENSION = ".journal";
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE_BY_ID = 2;
+    private static final byte REMOVE_GREATER = 3;
+    private static final byte REMOVE_LOWER = 4;
+    private static final byte CLEAR = 5;
+    private static final byte COMMIT = 6;
+
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static Path path;
+    private static volatile FileOutputStream stream;
+    private static volatile DataOutputStream out;
+    private static volatile long size = 0;
+
+    /**
+     * replays committed records of the journal of a collection file
+     * and opens the journal for writing
+     *
+     * @param collectionFileName path to xml or snapshot file
+     */
+    public static synchronized void open(String collectionFileName) {
+        path = Paths.get(collectionFileName + EXTENSION);
+        try {
+            size = 0;
+            if (Files.exists(path)) {
+                size = replay();
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(size);
+                }
+            }
+            stream = new FileOutputStream(path.toFile(), true);
+            out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        } catch (IOException e) {
+            System.out.println("Journal error, changes are saved by full rewriting" + ": " + e.getMessage());
+            out = null;
+        }
+    }
+
+    /**
+     * @return true if the journal is open for writing
+     */
+    public static synchronized boolean isOpen() {
+        return out != null;
+    }
+
+    /**
+     * records added or updated movie
+     * @param movie
+     */
+    static synchronized void logPut(Movie movie) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(PUT);
+            MovieSnapshot.writeMovie(movie, out);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    static synchronized void logRemoveById(int id) {
+        logInt(REMOVE_BY_ID, id);
+    }
+
+    static synchronized void logRemoveGreater(int oscarsCount) {
+        logInt(REMOVE_GREATER, oscarsCount);
+    }
+
+    static synchronized void logRemoveLower(int oscarsCount) {
+        logInt(REMOVE_LOWER, oscarsCount);
+    }
+
+    static synchronized void logClear() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(CLEAR);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private static synchronized void logInt(byte type, int value) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(type);
+            out.writeInt(value);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * passes the records of the last command to the file
+     */
+    public static synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * marks all records as saved and forces them to the disk
+     *
+     * @return true if the commit mark is written
+     */
+    static boolean commit() {
+        return mark() && sync();
+    }
+
+    /**
+     * marks all records as saved and passes them to the file,
+     * the mark is durable after sync
+     *
+     * @return true if the commit mark is written
+     */
+    static synchronized boolean mark() {
+        if (out == null) {
+            return false;
+        }
+        try {
+            out.writeByte(COMMIT);
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * forces the records passed to the file to the disk,
+     * runs without the monitor, so the commands are not stopped by the disk
+     *
+     * @return true if the records are on the disk
+     */
+    static boolean sync() {
+        FileOutputStream syncedStream = stream;
+        if (out == null) {
+            return false;
+        }
+        try {
+            syncedStream.getFD().sync();
+            size = syncedStream.getChannel().size();
+            return true;
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * @param collectionSize size of the full collection file
+     * @return true if it is time to rewrite the full file
+     */
+    static synchronized boolean needsCompaction(long collectionSize) {
+        return size > Math.max(MIN_COMPACTION_SIZE, collectionSize / 4);
+    }
+
+    /**
+     * empties the journal after the full file has been rewritten
+     */
+    static synchronized void reset() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+            stream.getChannel().truncate(0);
+            stream.getFD().sync();
+            size = 0;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * the journal is switched off after a writing error,
+     * the next save rewrites the full file
+     */
+    private static synchronized void fail(IOException e) {
+        OutputSink.println("Journal writing error, changes are saved by full rewriting" + ": " + e.getMessage());
+        try {
+            stream.close();
+        } catch (IOException ignore) {
+        }
+        out = null;
+    }
+
+    /**
+     * applies committed records to the storage
+     * @return size of the committed part of the journal
+     */
+    private static long replay() throws IOException {
+        long committedSize = 0;
+        int applied = 0;
+        List<Runnable> pending = new ArrayList<>();
+        try (CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+             DataInputStream in = new DataInputStream(counter)) {
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case PUT:
+                        Movie movie = MovieSnapshot.readMovie(in);
+                        pending.add(() -> MovieStorage.put(movie));
+                        break;
+                    case REMOVE_BY_ID:
+                        int id = in.readInt();
+                        pending.add(() -> MovieStorage.removeById(id));
+                        break;
+                    case REMOVE_GREATER:
+                        int greater = in.readInt();
+                        pending.add(() -> MovieStorage.removeGreater(greater));
+                        break;
+                    case REMOVE_LOWER:
+                        int lower = in.readInt();
+                        pending.add(() -> MovieStorage.removeLower(lower));
+                        break;
+                    case CLEAR:
+                        pending.add(MovieStorage::clear);
+                        break;
+                    case COMMIT:
+                        pending.forEach(Runnable::run);
+                        applied += pending.size();
+                        pending.clear();
+                        committedSize = counter.count;
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record " + type);
+                }
+            }
+        } catch (EOFException ignore) {
+            // unsaved or torn tail
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Journal is damaged after " + committedSize + " bytes" + ": " + e.getMessage());
+        }
+        if (applied > 0) {
+            System.out.println("Journal replayed: " + applied + " change(s).");
+        }
+        return committedSize;
+    }
+
+    /**
+     * counts bytes read from the journal
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int n = super.read(bytes, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
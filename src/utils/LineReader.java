@@ -0,0 +1,93 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * Source of command lines and command parameters:
+ * the console (through a Scanner) or a script file read through a buffer
+ * (without the regular expressions of Scanner)
+ */
+public class LineReader implements Closeable {
+    private final Scanner scanner;
+    private final BufferedReader reader;
+    /**
+     * lines read ahead by hasNext
+     */
+    private final Deque<String> lines = new ArrayDeque<>();
+
+    public LineReader(Scanner scanner) {
+        this.scanner = scanner;
+        this.reader = null;
+    }
+
+    public LineReader(BufferedReader reader) {
+        this.scanner = null;
+        this.reader = reader;
+    }
+
+    /**
+     * @return true if there is a not blank line ahead (the same as Scanner.hasNext)
+     * @throws UncheckedIOException reading error
+     */
+    public boolean hasNext() {
+        if (scanner != null) {
+            return scanner.hasNext();
+        }
+        for (String line : lines) {
+            if (!line.isBlank()) {
+                return true;
+            }
+        }
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.addLast(line);
+                if (!line.isBlank()) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return next line without the line separator
+     * @throws NoSuchElementException no more lines
+     * @throws UncheckedIOException reading error
+     */
+    public String nextLine() {
+        if (scanner != null) {
+            return scanner.nextLine();
+        }
+        if (!lines.isEmpty()) {
+            return lines.removeFirst();
+        }
+        try {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new NoSuchElementException("No line found");
+            }
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scanner != null) {
+            scanner.close();
+        } else {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package utils;
+
+import model.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of a MovieSnapshot file mapped into memory.
+ * Records are fixed-width, so the offset of a movie is computed from its
+ * number, and the string offsets table of the file serves as the string index.
+ * A Movie object is decoded only when it is requested, simple queries
+ * (rating counts, dates) read single fields straight from the mapping.
+ * Movies are numbered in storage order (oscars count, then id): a file written
+ * in another order (for example by the generator) gets a sorted table of record numbers
+ */
+class MappedSnapshot {
+    /**
+     * records are mapped in segments, a mapping can not exceed 2 GiB
+     */
+    private static final int RECORDS_PER_SEGMENT = (1 << 30) / MovieSnapshot.RECORD_SIZE;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final int count;
+    private final MappedByteBuffer strings;
+    private final int stringCount;
+    private final MappedByteBuffer[] segments;
+    /**
+     * record number of every movie in storage order, null if the file is in storage order
+     */
+    private int[] order = null;
+
+    private MappedSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, MovieSnapshot.HEADER_SIZE);
+        if (header.getInt() != MovieSnapshot.MAGIC) {
+            throw new IOException("Not a movie snapshot");
+        }
+        short version = header.getShort();
+        if (version != MovieSnapshot.VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        count = header.getInt();
+        stringCount = header.getInt();
+        int stringDataSize = header.getInt();
+
+        long stringsSize = 4L * stringCount + stringDataSize;
+        strings = channel.map(FileChannel.MapMode.READ_ONLY, MovieSnapshot.HEADER_SIZE, stringsSize);
+        long recordsStart = MovieSnapshot.HEADER_SIZE + stringsSize;
+        if (channel.size() < recordsStart + (long) count * MovieSnapshot.RECORD_SIZE) {
+            throw new IOException("Snapshot is truncated");
+        }
+
+        segments = new MappedByteBuffer[(count + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT];
+        for (int i = 0; i < segments.length; i++) {
+            long first = (long) i * RECORDS_PER_SEGMENT;
+            long records = Math.min(RECORDS_PER_SEGMENT, count - first);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    recordsStart + first * MovieSnapshot.RECORD_SIZE, records * MovieSnapshot.RECORD_SIZE);
+        }
+    }
+
+    /**
+     * maps a snapshot file (the mapping stays valid after the file is closed)
+     * @param path snapshot file
+     * @return mapped snapshot
+     * @throws IOException reading error or damaged snapshot
+     */
+    static MappedSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedSnapshot(channel);
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * decodes one movie
+     * @param index movie number in the snapshot
+     * @return movie
+     */
+    Movie get(int index) {
+        ByteBuffer segment = segment(index);
+        int base = offset(index);
+        byte rating = segment.get(base + MovieSnapshot.MPAA_RATING);
+        int personName = segment.getInt(base + MovieSnapshot.SCREENWRITER_NAME);
+        Person screenwriter = null;
+        if (personName >= 0) {
+            byte nationality = segment.get(base + MovieSnapshot.NATIONALITY);
+            screenwriter = new Person(string(personName),
+                    segment.getInt(base + MovieSnapshot.WEIGHT),
+                    MovieSnapshot.COLORS[segment.get(base + MovieSnapshot.EYE_COLOR)],
+                    MovieSnapshot.COLORS[segment.get(base + MovieSnapshot.HAIR_COLOR)],
+                    nationality < 0 ? null : MovieSnapshot.COUNTRIES[nationality]);
+        }
+        return new Movie(segment.getInt(base + MovieSnapshot.ID),
+                string(segment.getInt(base + MovieSnapshot.NAME)),
+                new Coordinates(segment.getInt(base + MovieSnapshot.X), segment.getLong(base + MovieSnapshot.Y)),
+                LocalDate.ofEpochDay(segment.getLong(base + MovieSnapshot.CREATION_DATE)),
+                segment.getInt(base + MovieSnapshot.OSCARS_COUNT),
+                segment.getInt(base + MovieSnapshot.GOLDEN_PALM_COUNT),
+                segment.getLong(base + MovieSnapshot.LENGTH),
+                rating < 0 ? null : MovieSnapshot.RATINGS[rating],
+                screenwriter);
+    }
+
+    /**
+     * @param index movie number in the snapshot
+     * @return storage key of the movie (see MovieStorage.orderKey)
+     */
+    long getOrderKey(int index) {
+        ByteBuffer segment = segment(index);
+        int base = offset(index);
+        return MovieStorage.orderKey(segment.getInt(base + MovieSnapshot.OSCARS_COUNT),
+                segment.getInt(base + MovieSnapshot.ID));
+    }
+
+    /**
+     * numbers the movies in storage order, called once before the snapshot is shared.
+     * The keys are sorted together with the record numbers in primitive arrays,
+     * only the record numbers stay after the sort
+     */
+    void sortByStorageOrder() {
+        long[] keys = new long[count];
+        int[] records = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = getOrderKey(i);
+            records[i] = i;
+        }
+        sort(keys, records, 0, count);
+        order = records;
+    }
+
+    /**
+     * quicksort of the pairs (key, record) in [from, to), equal keys (repeated ids)
+     * are ordered by record number, so they keep the file order
+     */
+    private static void sort(long[] keys, int[] records, int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            int middle = (from + to) >>> 1;
+            long pivotKey = keys[middle];
+            int pivotRecord = records[middle];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (isLess(keys[i], records[i], pivotKey, pivotRecord)) {
+                    i++;
+                }
+                while (isLess(pivotKey, pivotRecord, keys[j], records[j])) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, records, i++, j--);
+                }
+            }
+            // the smaller part is sorted by recursion, so the depth stays logarithmic
+            if (j - from < to - i) {
+                sort(keys, records, from, j + 1);
+                from = i;
+            } else {
+                sort(keys, records, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && isLess(keys[j], records[j], keys[j - 1], records[j - 1]); j--) {
+                swap(keys, records, j, j - 1);
+            }
+        }
+    }
+
+    private static boolean isLess(long key, int record, long otherKey, int otherRecord) {
+        return key < otherKey || key == otherKey && record < otherRecord;
+    }
+
+    private static void swap(long[] keys, int[] records, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int record = records[i];
+        records[i] = records[j];
+        records[j] = record;
+    }
+
+    /**
+     * @param index movie number in the snapshot
+     * @return movie id
+     */
+    int getId(int index) {
+        return segment(index).getInt(offset(index) + MovieSnapshot.ID);
+    }
+
+    /**
+     * @param index movie number in the snapshot
+     * @return mpaa rating ordinal, -1 for null
+     */
+    byte getRatingOrdinal(int index) {
+        return segment(index).get(offset(index) + MovieSnapshot.MPAA_RATING);
+    }
+
+    /**
+     * @param index movie number in the snapshot
+     * @return creation date as epoch day
+     */
+    long getCreationEpochDay(int index) {
+        return segment(index).getLong(offset(index) + MovieSnapshot.CREATION_DATE);
+    }
+
+    /**
+     * reads a numeric field of all movies straight from the mapping
+     * @param version version of the collection (see MovieStorage.getVersion)
+     * @param field
+     * @return column for aggregate queries
+     */
+    Aggregates.Column readColumn(long version, Aggregates.Field field) {
+        int fieldOffset;
+        boolean isLong = false;
+        switch (field) {
+            case OSCARS_COUNT:
+                fieldOffset = MovieSnapshot.OSCARS_COUNT;
+                break;
+            case GOLDEN_PALM_COUNT:
+                fieldOffset = MovieSnapshot.GOLDEN_PALM_COUNT;
+                break;
+            case LENGTH:
+                fieldOffset = MovieSnapshot.LENGTH;
+                isLong = true;
+                break;
+            case X:
+                fieldOffset = MovieSnapshot.X;
+                break;
+            default:
+                fieldOffset = MovieSnapshot.Y;
+                isLong = true;
+        }
+        long[] values = new long[count];
+        byte[] ratingSlots = new byte[count];
+        for (int i = 0; i < count; i++) {
+            ByteBuffer segment = segment(i);
+            int base = offset(i);
+            values[i] = isLong ? segment.getLong(base + fieldOffset) : segment.getInt(base + fieldOffset);
+            ratingSlots[i] = (byte) (segment.get(base + MovieSnapshot.MPAA_RATING) + 1);
+        }
+        return new Aggregates.Column(version, values, ratingSlots);
+    }
+
+    /**
+     * @return iterator decoding movies one by one in snapshot order
+     */
+    Iterator<Movie> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * @param from number of the first movie
+     * @return iterator decoding movies one by one in snapshot order
+     */
+    Iterator<Movie> iterator(int from) {
+        return new Iterator<Movie>() {
+            private int next = Math.max(0, from);
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public Movie next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    private ByteBuffer segment(int index) {
+        return segments[record(index) / RECORDS_PER_SEGMENT];
+    }
+
+    private int offset(int index) {
+        return (record(index) % RECORDS_PER_SEGMENT) * MovieSnapshot.RECORD_SIZE;
+    }
+
+    /**
+     * @param index movie number in storage order
+     * @return record number in the file
+     */
+    private int record(int index) {
+        return order == null ? index : order[index];
+    }
+
+    private String string(int index) {
+        if (index < 0 || index >= stringCount) {
+            throw new IllegalArgumentException("Illegal string reference in snapshot: " + index);
+        }
+        int position = 4 * stringCount + strings.getInt(4 * index);
+        int length = strings.getInt(position);
+        byte[] bytes = new byte[length];
+        strings.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,269 @@
+package utils;
+
+import model.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Generates synthetic movies for benchmarks and load tests.
+ * The same seed and settings always give the same movies, so the results are reproducible.
+ * Every field satisfies the checks of the model classes and the xsd scheme.
+ * Screenwriters are taken from a pool, so one person writes several movies.
+ * Movies are generated one by one, a file of any size is written without
+ * keeping the collection or its names in memory (see generate and MovieSnapshot.writeStreaming)
+ */
+public class MovieGenerator {
+    public static final long DEFAULT_SEED = 42;
+    /**
+     * weights of null rating (slot 0) and of the ratings (slot ordinal + 1)
+     */
+    public static final int[] DEFAULT_RATING_WEIGHTS = {1, 1, 1, 1};
+    public static final double DEFAULT_NO_SCREENWRITER_SHARE = 0.25;
+    public static final int DEFAULT_SCREENWRITER_COUNT = 1000;
+
+    private static final String USAGE = "generate count file_name [--seed N] [--ratings G:1,R:1,NC_17:1,null:1]"
+            + " [--no-screenwriter 0.25] [--names N] [--screenwriters N]\n"
+            + "  file_name with the " + FileAccessor.SNAPSHOT_EXTENSION + " extension is written as a binary snapshot, other as XML\n"
+            + "  --names N limits the number of different movie names (0 - every name is unique)";
+
+    private static final String[] WORDS = {
+            "Dark", "Silent", "Last", "Red", "Lost", "Golden", "Night", "River", "Storm", "City",
+            "Ghost", "Winter", "Star", "Iron", "Blue", "Empire", "Shadow", "Garden", "Road", "Dream"
+    };
+    private static final String[] FIRST_NAMES = {
+            "Anna", "Boris", "Clara", "Denis", "Elena", "Felix", "Greta", "Hugo", "Irina", "Jan"
+    };
+    private static final String[] LAST_NAMES = {
+            "Smith", "Ivanov", "Muller", "Dubois", "Rossi", "Novak", "Berg", "Kowalski", "Lind", "Moreau"
+    };
+    private static final LocalDate FIRST_DATE = LocalDate.of(2000, 1, 1);
+    private static final int DATE_RANGE_DAYS = 8000;
+
+    private final long seed;
+    private final int[] ratingWeights;
+    private final int ratingWeightSum;
+    private final double noScreenwriterShare;
+    private final int nameCount;
+    private final Random random;
+    private final Person[] screenwriters;
+    private int nextId = 1;
+
+    /**
+     * generator with the default distributions and unique names
+     * @param seed seed of the random generator
+     */
+    public MovieGenerator(long seed) {
+        this(seed, DEFAULT_RATING_WEIGHTS, DEFAULT_NO_SCREENWRITER_SHARE, 0, DEFAULT_SCREENWRITER_COUNT);
+    }
+
+    /**
+     * @param seed seed of the random generator
+     * @param ratingWeights weights of null rating (slot 0) and of the ratings (slot ordinal + 1)
+     * @param noScreenwriterShare share of movies without screenwriter (0..1)
+     * @param nameCount number of different movie names, 0 for unique names
+     * @param screenwriterCount size of the screenwriter pool
+     * @throws IllegalArgumentException illegal settings
+     */
+    public MovieGenerator(long seed, int[] ratingWeights, double noScreenwriterShare, int nameCount, int screenwriterCount) {
+        int weightSum = 0;
+        for (int weight : ratingWeights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Rating weight can not be negative");
+            }
+            weightSum += weight;
+        }
+        if (ratingWeights.length != MpaaRating.values().length + 1 || weightSum == 0) {
+            throw new IllegalArgumentException("Rating weights are illegal");
+        }
+        if (noScreenwriterShare < 0 || noScreenwriterShare > 1
+                || (noScreenwriterShare < 1 && screenwriterCount <= 0)) {
+            throw new IllegalArgumentException("Screenwriter settings are illegal");
+        }
+        if (nameCount < 0) {
+            throw new IllegalArgumentException("Name count can not be negative");
+        }
+        this.seed = seed;
+        this.ratingWeights = ratingWeights.clone();
+        this.ratingWeightSum = weightSum;
+        this.noScreenwriterShare = noScreenwriterShare;
+        this.nameCount = nameCount;
+        random = new Random(seed);
+        screenwriters = new Person[Math.max(0, screenwriterCount)];
+        for (int i = 0; i < screenwriters.length; i++) {
+            screenwriters[i] = new Person(
+                    FIRST_NAMES[i % FIRST_NAMES.length] + " " + LAST_NAMES[i / FIRST_NAMES.length % LAST_NAMES.length] + " " + i,
+                    40 + random.nextInt(80),
+                    pick(Color.values()),
+                    pick(Color.values()),
+                    random.nextInt(4) == 0 ? null : pick(Country.values()));
+        }
+    }
+
+    /**
+     * generates the next movie, ids go up from 1
+     * @return movie
+     */
+    public Movie next() {
+        int id = nextId++;
+        int nameNumber = nameCount > 0 ? random.nextInt(nameCount) : id;
+        return new Movie(id,
+                WORDS[nameNumber % WORDS.length] + " " + WORDS[nameNumber / WORDS.length % WORDS.length] + " " + nameNumber,
+                new Coordinates(random.nextInt(1000) - 161, 232L - random.nextInt(1000)),
+                FIRST_DATE.plusDays(random.nextInt(DATE_RANGE_DAYS)),
+                1 + random.nextInt(100),
+                1 + random.nextInt(50),
+                60 + random.nextInt(180),
+                nextRating(),
+                random.nextDouble() < noScreenwriterShare ? null : pick(screenwriters));
+    }
+
+    /**
+     * movies of a new generator with the same seed and settings,
+     * every iteration gives the same movies
+     * @param count number of movies
+     * @return movies generated on iteration
+     */
+    public Iterable<Movie> movies(int count) {
+        return () -> new Iterator<Movie>() {
+            private final MovieGenerator generator = new MovieGenerator(seed, ratingWeights, noScreenwriterShare,
+                    nameCount, screenwriters.length);
+            private int left = count;
+
+            @Override
+            public boolean hasNext() {
+                return left > 0;
+            }
+
+            @Override
+            public Movie next() {
+                if (left <= 0) {
+                    throw new NoSuchElementException();
+                }
+                left--;
+                return generator.next();
+            }
+        };
+    }
+
+    /**
+     * generates a list of movies
+     * @param count number of movies
+     * @param seed seed of the random generator
+     * @return movies with ids from 1 to count
+     */
+    public static List<Movie> generate(int count, long seed) {
+        List<Movie> movies = new ArrayList<>(count);
+        new MovieGenerator(seed).movies(count).forEach(movies::add);
+        return movies;
+    }
+
+    /**
+     * writes a generated collection to a file
+     * @param args count, file name and options (see USAGE)
+     * @return true if the file is written
+     * @throws IllegalArgumentException illegal arguments
+     */
+    public static boolean generate(String[] args) {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Count and file name are expected\n" + USAGE);
+        }
+        int count = Integer.parseInt(args[0]);
+        if (count < 0) {
+            throw new IllegalArgumentException("Count can not be negative");
+        }
+        String fileName = args[1];
+        long seed = DEFAULT_SEED;
+        int[] ratingWeights = DEFAULT_RATING_WEIGHTS;
+        double noScreenwriterShare = DEFAULT_NO_SCREENWRITER_SHARE;
+        int nameCount = 0;
+        int screenwriterCount = DEFAULT_SCREENWRITER_COUNT;
+        for (int i = 2; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Value of '" + args[i] + "' is expected\n" + USAGE);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--ratings":
+                    ratingWeights = parseRatingWeights(value);
+                    break;
+                case "--no-screenwriter":
+                    noScreenwriterShare = Double.parseDouble(value);
+                    break;
+                case "--names":
+                    nameCount = Integer.parseInt(value);
+                    break;
+                case "--screenwriters":
+                    screenwriterCount = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option '" + args[i - 1] + "'\n" + USAGE);
+            }
+        }
+        MovieGenerator generator = new MovieGenerator(seed, ratingWeights, noScreenwriterShare, nameCount, screenwriterCount);
+        // the dictionary of a limited number of names stays small and keeps the snapshot compact
+        boolean isWritten = nameCount > 0
+                ? FileAccessor.writeFile(fileName, generator.movies(count))
+                : FileAccessor.writeGeneratedFile(fileName, generator.movies(count));
+        if (isWritten) {
+            OutputSink.println("Generated " + count + " movie(s) to '" + fileName + "'.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * command line tool: java utils.MovieGenerator count file_name [options]
+     * @param args count, file name and options
+     */
+    public static void main(String[] args) {
+        try {
+            if (!generate(args)) {
+                System.exit(1);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Generator error" + ": " + e.getMessage());
+            System.exit(1);
+        } finally {
+            OutputSink.flush();
+        }
+    }
+
+    /**
+     * @param value weights like "G:1,R:2,NC_17:1,null:0", missing ratings get 0
+     * @return weights of null rating (slot 0) and of the ratings (slot ordinal + 1)
+     */
+    private static int[] parseRatingWeights(String value) {
+        int[] weights = new int[MpaaRating.values().length + 1];
+        for (String pair : value.split(",")) {
+            String[] parts = pair.split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Rating weight '" + pair + "' is illegal, rating:weight is expected");
+            }
+            int slot = parts[0].equals("null") ? 0 : MpaaRating.valueOf(parts[0]).ordinal() + 1;
+            weights[slot] = Integer.parseInt(parts[1]);
+        }
+        return weights;
+    }
+
+    private MpaaRating nextRating() {
+        int point = random.nextInt(ratingWeightSum);
+        for (int slot = 0; ; slot++) {
+            point -= ratingWeights[slot];
+            if (point < 0) {
+                return slot == 0 ? null : MpaaRating.values()[slot - 1];
+            }
+        }
+    }
+
+    private <T> T pick(T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,139 @@
+package utils;
+
+import model.Movie;
+
+import java.util.Arrays;
+
+/**
+ * Primary key index of stored movies.
+ * Open addressing hash map with primitive int keys (no boxing),
+ * id 0 marks a free slot since movie ids are always greater than 0
+ */
+class MovieIdIndex {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private Movie[] values;
+    /**
+     * read by MovieStorage.size without the lock
+     */
+    private volatile int size;
+    private int mask;
+
+    MovieIdIndex() {
+        keys = new int[DEFAULT_CAPACITY];
+        values = new Movie[DEFAULT_CAPACITY];
+        mask = DEFAULT_CAPACITY - 1;
+    }
+
+    /**
+     * obtaining movie by id
+     * @param id
+     * @return movie or null if there is no such id
+     */
+    Movie get(int id) {
+        int slot = find(id);
+        return slot < 0 ? null : values[slot];
+    }
+
+    boolean contains(int id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * put movie by its id (replaces the previous one with the same id)
+     * @param movie
+     */
+    void put(Movie movie) {
+        int id = movie.getId();
+        int slot = hash(id) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == id) {
+                values[slot] = movie;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        values[slot] = movie;
+        if (++size > (keys.length >> 1) + (keys.length >> 2)) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * remove movie by id
+     * @param id
+     * @return removed movie or null if there is no such id
+     */
+    Movie remove(int id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return null;
+        }
+        Movie removed = values[slot];
+        size--;
+        // backward shift deletion keeps probe sequences unbroken without tombstones
+        int free = slot;
+        int cur = (slot + 1) & mask;
+        while (keys[cur] != 0) {
+            int home = hash(keys[cur]) & mask;
+            if (((cur - home) & mask) >= ((cur - free) & mask)) {
+                keys[free] = keys[cur];
+                values[free] = values[cur];
+                free = cur;
+            }
+            cur = (cur + 1) & mask;
+        }
+        keys[free] = 0;
+        values[free] = null;
+        return removed;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int find(int id) {
+        int slot = hash(id) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Movie[] oldValues = values;
+        keys = new int[capacity];
+        values = new Movie[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * spreads sequential ids over the table
+     */
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,254 @@
+package utils;
+
+import model.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Movie record of a JSON lines file, one object per line with the structure of the XML file:
+ * <pre>
+ * {"name": "...", "coordinates": {"x": 1, "y": 2}, "oscarsCount": 1, "goldenPalmCount": 1, "length": 90,
+ *  "mpaaRating": "G", "screenwriter": {"name": "...", "weight": 70, "eyeColor": "RED",
+ *  "hairColor": "BLACK", "nationality": "FRANCE"}}
+ * </pre>
+ * mpaaRating, screenwriter and nationality may be null or missing.
+ * id and creationDate are assigned as for the add command, unknown keys are ignored.
+ * Only objects, strings, integers, booleans and null are supported
+ */
+class MovieJson {
+    private final String text;
+    private int position = 0;
+
+    private MovieJson(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @param line JSON object
+     * @return created Movie
+     * @throws IllegalArgumentException broken JSON, missing or illegal field value
+     */
+    static Movie parseMovie(String line) {
+        MovieJson parser = new MovieJson(line);
+        parser.skipSpaces();
+        Map<String, Object> movie = parser.readObject();
+        parser.skipSpaces();
+        if (parser.position != line.length()) {
+            throw parser.error("Unexpected text after the object");
+        }
+        Map<String, Object> coordinates = object(movie, "coordinates", true);
+        Map<String, Object> person = object(movie, "screenwriter", false);
+        Person screenwriter = person == null ? null : new Person(string(person, "name", true),
+                intValue(person, "weight"),
+                enumValue(person, "eyeColor", Color.values(), true),
+                enumValue(person, "hairColor", Color.values(), true),
+                enumValue(person, "nationality", Country.values(), false));
+        return new Movie(MovieStorage.generateMovieId(),
+                string(movie, "name", true),
+                new Coordinates(intValue(coordinates, "x"), longValue(coordinates, "y")),
+                LocalDate.now(),
+                intValue(movie, "oscarsCount"),
+                intValue(movie, "goldenPalmCount"),
+                longValue(movie, "length"),
+                enumValue(movie, "mpaaRating", MpaaRating.values(), false),
+                screenwriter);
+    }
+
+    private static Object value(Map<String, Object> object, String key, boolean isRequired) {
+        Object value = object.get(key);
+        if (value == null && isRequired) {
+            throw new IllegalArgumentException("Field '" + key + "' is missing");
+        }
+        return value;
+    }
+
+    private static String string(Map<String, Object> object, String key, boolean isRequired) {
+        Object value = value(object, key, isRequired);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Field '" + key + "' must be a string");
+        }
+        return (String) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(Map<String, Object> object, String key, boolean isRequired) {
+        Object value = value(object, key, isRequired);
+        if (value != null && !(value instanceof Map)) {
+            throw new IllegalArgumentException("Field '" + key + "' must be an object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static long longValue(Map<String, Object> object, String key) {
+        Object value = value(object, key, true);
+        if (!(value instanceof Long)) {
+            throw new IllegalArgumentException("Field '" + key + "' must be an integer");
+        }
+        return (Long) value;
+    }
+
+    private static int intValue(Map<String, Object> object, String key) {
+        long value = longValue(object, key);
+        if (value != (int) value) {
+            throw new IllegalArgumentException("Field '" + key + "' is too big");
+        }
+        return (int) value;
+    }
+
+    private static <E extends Enum<E>> E enumValue(Map<String, Object> object, String key, E[] values, boolean isRequired) {
+        String name = string(object, key, isRequired);
+        if (name == null) {
+            return null;
+        }
+        for (E value : values) {
+            if (value.name().equals(name)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unknown value '" + name + "' of field '" + key + "'");
+    }
+
+    private Map<String, Object> readObject() {
+        expect('{');
+        Map<String, Object> object = new HashMap<>();
+        skipSpaces();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipSpaces();
+            String key = readString();
+            skipSpaces();
+            expect(':');
+            skipSpaces();
+            object.put(key, readValue());
+            skipSpaces();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private Object readValue() {
+        char c = peek();
+        if (c == '{') {
+            return readObject();
+        }
+        if (c == '"') {
+            return readString();
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            int start = position;
+            position++;
+            while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                position++;
+            }
+            if (position < text.length() && ".eE".indexOf(text.charAt(position)) >= 0) {
+                throw error("Only integer numbers are expected");
+            }
+            try {
+                return Long.parseLong(text, start, position, 10);
+            } catch (NumberFormatException e) {
+                throw error("Illegal number");
+            }
+        }
+        if (text.startsWith("null", position)) {
+            position += 4;
+            return null;
+        }
+        if (text.startsWith("true", position)) {
+            position += 4;
+            return Boolean.TRUE;
+        }
+        if (text.startsWith("false", position)) {
+            position += 5;
+            return Boolean.FALSE;
+        }
+        throw error("Unexpected value");
+    }
+
+    private String readString() {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (position >= text.length()) {
+                throw error("String is not closed");
+            }
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char escape = peek();
+            position++;
+            switch (escape) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("Illegal escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(text, position, position + 4, 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Illegal escape");
+                    }
+                    position += 4;
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escape);
+                    break;
+                default:
+                    throw error("Illegal escape");
+            }
+        }
+    }
+
+    private char peek() {
+        if (position >= text.length()) {
+            throw error("Unexpected end of the line");
+        }
+        return text.charAt(position);
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("'" + c + "' is expected");
+        }
+        position++;
+    }
+
+    private void skipSpaces() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + (position + 1));
+    }
+}
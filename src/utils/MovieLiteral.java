@@ -0,0 +1,165 @@
+package utils;
+
+/**
+ * One-line comma-separated record (a movie literal of the commands, a line of a CSV file).
+ * The line is scanned once; only the bounds of the fields are kept, numbers and enums
+ * are read straight from the line without substrings.
+ * A field with commas or quotes is written in double quotes ("" stands for a quote),
+ * spaces around the fields are ignored
+ */
+class MovieLiteral {
+    private final String line;
+    private final int[] starts;
+    private final int[] ends;
+    /**
+     * unescaped quoted fields, allocated only if the line has them
+     */
+    private String[] quoted;
+    private int count = 0;
+
+    /**
+     * @param line record text
+     * @param maxFields max number of fields
+     * @throws IllegalArgumentException too many fields or an unclosed quote
+     */
+    MovieLiteral(String line, int maxFields) {
+        this.line = line;
+        starts = new int[maxFields];
+        ends = new int[maxFields];
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            if (count == maxFields) {
+                throw new IllegalArgumentException("Too many fields, no more than " + maxFields + " are expected");
+            }
+            i = skipSpaces(i);
+            if (i < length && line.charAt(i) == '"') {
+                i = readQuoted(i + 1);
+                i = skipSpaces(i);
+                if (i < length && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Comma is expected after quoted field " + (count + 1));
+                }
+            } else {
+                int start = i;
+                while (i < length && line.charAt(i) != ',') {
+                    i++;
+                }
+                int end = i;
+                while (end > start && line.charAt(end - 1) == ' ') {
+                    end--;
+                }
+                starts[count] = start;
+                ends[count] = end;
+            }
+            count++;
+            if (i >= length) {
+                return;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * @return number of fields
+     */
+    int size() {
+        return count;
+    }
+
+    boolean isEmpty(int field) {
+        return text(field).isEmpty();
+    }
+
+    String text(int field) {
+        if (quoted != null && quoted[field] != null) {
+            return quoted[field];
+        }
+        return line.substring(starts[field], ends[field]);
+    }
+
+    /**
+     * @throws NumberFormatException not a number
+     */
+    int intValue(int field) {
+        if (quoted != null && quoted[field] != null) {
+            return Integer.parseInt(quoted[field]);
+        }
+        return Integer.parseInt(line, starts[field], ends[field], 10);
+    }
+
+    /**
+     * @throws NumberFormatException not a number
+     */
+    long longValue(int field) {
+        if (quoted != null && quoted[field] != null) {
+            return Long.parseLong(quoted[field]);
+        }
+        return Long.parseLong(line, starts[field], ends[field], 10);
+    }
+
+    /**
+     * @param field field number
+     * @param values values of the enum
+     * @return value with the name of the field, null for an empty field
+     * @throws IllegalArgumentException unknown name
+     */
+    <E extends Enum<E>> E enumValue(int field, E[] values) {
+        if (quoted != null && quoted[field] != null) {
+            String name = quoted[field];
+            for (E value : values) {
+                if (value.name().equals(name)) {
+                    return value;
+                }
+            }
+        } else {
+            int start = starts[field];
+            int length = ends[field] - start;
+            if (length == 0) {
+                return null;
+            }
+            for (E value : values) {
+                if (value.name().length() == length && line.regionMatches(start, value.name(), 0, length)) {
+                    return value;
+                }
+            }
+        }
+        if (text(field).isEmpty()) {
+            return null;
+        }
+        throw new IllegalArgumentException("Unknown value '" + text(field) + "' of field " + (field + 1));
+    }
+
+    private int skipSpaces(int i) {
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param i position after the opening quote
+     * @return position after the closing quote
+     */
+    private int readQuoted(int i) {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (i >= line.length()) {
+                throw new IllegalArgumentException("Quote of field " + (count + 1) + " is not closed");
+            }
+            char c = line.charAt(i++);
+            if (c != '"') {
+                sb.append(c);
+            } else if (i < line.length() && line.charAt(i) == '"') {
+                sb.append('"');
+                i++;
+            } else {
+                break;
+            }
+        }
+        if (quoted == null) {
+            quoted = new String[starts.length];
+        }
+        quoted[count] = sb.toString();
+        return i;
+    }
+}
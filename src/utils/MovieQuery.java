@@ -0,0 +1,604 @@
+package utils;
+
+import model.Color;
+import model.Country;
+import model.Movie;
+import model.MpaaRating;
+import model.Person;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Filter of the query command, for example
+ * <pre>oscarsCount > 5 and length < 120 and screenwriter.nationality = FRANCE</pre>
+ * <pre>
+ * query      := or
+ * or         := and ("or" and)*
+ * and        := unary ("and" unary)*
+ * unary      := "not" unary | "(" or ")" | comparison
+ * comparison := field ("=" | "!=" | "<" | "<=" | ">" | ">=") value
+ * </pre>
+ * Fields: id, name, x, y, creationDate, oscarsCount, goldenPalmCount, length, mpaaRating,
+ * screenwriter (only = null and != null), screenwriter.name, screenwriter.weight,
+ * screenwriter.eyeColor, screenwriter.hairColor, screenwriter.nationality.
+ * Values: numbers, dates yyyy-mm-dd, enum names, words or strings in quotes, null.
+ * The text is parsed once into a tree of predicates specialized for the field type and
+ * the operator (primitive comparisons, no reflection). Conditions on id, mpaa rating,
+ * screenwriter name and creation date joined by "and" at the top level select the movies
+ * through the indexes of MovieStorage, other queries scan the collection in parallel
+ */
+public class MovieQuery {
+    private static final int CACHE_SIZE = 64;
+    private static final int PARALLEL_SCAN_THRESHOLD = 1 << 14;
+    /**
+     * compiled queries by text, a query is immutable and shared by the clients
+     */
+    private static final Map<String, MovieQuery> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, MovieQuery>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MovieQuery> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+    private static final Comparator<Movie> STORAGE_ORDER = Comparator.comparingInt(Movie::getOscarsCount)
+            .thenComparingInt(Movie::getId);
+
+    private final Predicate<Movie> predicate;
+    /**
+     * index conditions: the movies of the most selective one are checked by the predicate
+     */
+    private final Integer id;
+    private final boolean hasRating;
+    private final MpaaRating rating;
+    private final boolean hasScreenwriter;
+    private final String screenwriterName;
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+
+    private MovieQuery(Node root) {
+        predicate = root.compile();
+        List<Node> conjuncts = root instanceof And ? ((And) root).children : List.of(root);
+        Integer id = null;
+        boolean hasRating = false;
+        MpaaRating rating = null;
+        boolean hasScreenwriter = false;
+        String screenwriterName = null;
+        LocalDate fromDate = LocalDate.MIN;
+        LocalDate toDate = LocalDate.MAX;
+        for (Node node : conjuncts) {
+            if (!(node instanceof Comparison)) {
+                continue;
+            }
+            Comparison comparison = (Comparison) node;
+            switch (comparison.field) {
+                case "id":
+                    long value = parseLong(comparison);
+                    if (comparison.op == Op.EQ && value == (int) value) {
+                        id = (int) value;
+                    }
+                    break;
+                case "mpaaRating":
+                    if (comparison.op == Op.EQ) {
+                        hasRating = true;
+                        rating = comparison.value == null ? null : parseEnum(MpaaRating.class, comparison);
+                    }
+                    break;
+                case "screenwriter.name":
+                case "screenwriter":
+                    if (comparison.op == Op.EQ && (comparison.value != null || comparison.field.equals("screenwriter"))) {
+                        hasScreenwriter = true;
+                        screenwriterName = comparison.value;
+                    }
+                    break;
+                case "creationDate":
+                    LocalDate date = parseDate(comparison);
+                    if (comparison.op == Op.EQ || comparison.op == Op.GE || comparison.op == Op.GT) {
+                        LocalDate from = comparison.op == Op.GT ? date.plusDays(1) : date;
+                        fromDate = from.isAfter(fromDate) ? from : fromDate;
+                    }
+                    if (comparison.op == Op.EQ || comparison.op == Op.LE || comparison.op == Op.LT) {
+                        LocalDate to = comparison.op == Op.LT ? date.minusDays(1) : date;
+                        toDate = to.isBefore(toDate) ? to : toDate;
+                    }
+                    break;
+                default:
+            }
+        }
+        this.id = id;
+        this.hasRating = hasRating;
+        this.rating = rating;
+        this.hasScreenwriter = hasScreenwriter;
+        this.screenwriterName = screenwriterName;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+    }
+
+    /**
+     * parses and compiles a query (compiled queries are cached by text)
+     * @param text query expression
+     * @return query
+     * @throws IllegalArgumentException syntax error, unknown field or illegal value
+     */
+    public static MovieQuery compile(String text) {
+        String key = text.trim();
+        MovieQuery query = CACHE.get(key);
+        if (query == null) {
+            if (key.isEmpty()) {
+                throw new IllegalArgumentException("Query expression is expected");
+            }
+            query = new MovieQuery(new Parser(key).parse());
+            CACHE.put(key, query);
+        }
+        return query;
+    }
+
+    /**
+     * @param movie
+     * @return true if the movie matches the query
+     */
+    public boolean test(Movie movie) {
+        return predicate.test(movie);
+    }
+
+    /**
+     * @return movies matching the query in storage order (by oscars count and id)
+     */
+    public List<Movie> execute() {
+        List<Movie> candidates = selectByIndex();
+        if (candidates == null) {
+            return scan(MovieStorage.snapshot());
+        }
+        List<Movie> movies = new ArrayList<>();
+        for (Movie movie : candidates) {
+            if (predicate.test(movie)) {
+                movies.add(movie);
+            }
+        }
+        movies.sort(STORAGE_ORDER);
+        return movies;
+    }
+
+    private enum Access { ID, RATING, SCREENWRITER, DATE, SCAN }
+
+    /**
+     * chooses the index with the least movies (the date range is estimated
+     * as a share of the collection between the min and the max creation date)
+     */
+    private Access chooseIndex() {
+        if (id != null) {
+            return Access.ID;
+        }
+        Access best = Access.SCAN;
+        long bestCount = MovieStorage.size();
+        if (hasRating) {
+            int count = MovieStorage.countByMpaaRating(rating);
+            if (count < bestCount) {
+                best = Access.RATING;
+                bestCount = count;
+            }
+        }
+        if (hasScreenwriter) {
+            int count = MovieStorage.countByScreenwriter(screenwriterName);
+            if (count < bestCount) {
+                best = Access.SCREENWRITER;
+                bestCount = count;
+            }
+        }
+        if ((fromDate != LocalDate.MIN || toDate != LocalDate.MAX) && estimateDateRange() < bestCount) {
+            best = Access.DATE;
+        }
+        return best;
+    }
+
+    private long estimateDateRange() {
+        int size = MovieStorage.size();
+        if (size == 0 || fromDate.isAfter(toDate)) {
+            return 0;
+        }
+        Movie first = MovieStorage.getMinCreationDate();
+        Movie last = MovieStorage.getMaxCreationDate();
+        if (first == null || last == null) {
+            return 0;
+        }
+        long minDay = first.getCreationEpochDay();
+        long maxDay = last.getCreationEpochDay();
+        long from = Math.max(minDay, fromDate.toEpochDay());
+        long to = Math.min(maxDay, toDate.toEpochDay());
+        if (from > to) {
+            return 0;
+        }
+        return (long) ((double) size * (to - from + 1) / (maxDay - minDay + 1));
+    }
+
+    /**
+     * @return movies of the chosen index or null for the scan
+     */
+    private List<Movie> selectByIndex() {
+        switch (chooseIndex()) {
+            case ID:
+                Movie movie = MovieStorage.getById(id);
+                return movie != null ? List.of(movie) : List.of();
+            case RATING:
+                return MovieStorage.filterByMpaaRating(rating);
+            case SCREENWRITER:
+                return MovieStorage.filterByScreenwriter(screenwriterName);
+            case DATE:
+                return MovieStorage.filterByCreationDate(fromDate, toDate);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * checks every movie, big collections in parallel (the order is kept)
+     */
+    private List<Movie> scan(List<Movie> movies) {
+        IntStream indexes = IntStream.range(0, movies.size());
+        if (movies.size() >= PARALLEL_SCAN_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        return indexes.mapToObj(movies::get).filter(predicate).collect(Collectors.toList());
+    }
+
+    private enum Op {
+        EQ, NE, LT, LE, GT, GE;
+
+        boolean isOrdering() {
+            return this != EQ && this != NE;
+        }
+    }
+
+    /**
+     * node of the parsed expression
+     */
+    private interface Node {
+        Predicate<Movie> compile();
+    }
+
+    private static class And implements Node {
+        private final List<Node> children;
+
+        And(List<Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        public Predicate<Movie> compile() {
+            Predicate<Movie> result = children.get(0).compile();
+            for (int i = 1; i < children.size(); i++) {
+                result = result.and(children.get(i).compile());
+            }
+            return result;
+        }
+    }
+
+    private static class Or implements Node {
+        private final List<Node> children;
+
+        Or(List<Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        public Predicate<Movie> compile() {
+            Predicate<Movie> result = children.get(0).compile();
+            for (int i = 1; i < children.size(); i++) {
+                result = result.or(children.get(i).compile());
+            }
+            return result;
+        }
+    }
+
+    private static class Not implements Node {
+        private final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        public Predicate<Movie> compile() {
+            return child.compile().negate();
+        }
+    }
+
+    /**
+     * field op value, the value is null for the null literal
+     */
+    private static class Comparison implements Node {
+        private final String field;
+        private final Op op;
+        private final String value;
+
+        Comparison(String field, Op op, String value) {
+            this.field = field;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        public Predicate<Movie> compile() {
+            switch (field) {
+                case "id":
+                    return compareLong(Movie::getId, op, parseLong(this));
+                case "name":
+                    return compareString(Movie::getName, op, requireValue(this));
+                case "x":
+                    return compareLong(Movie::getCoordinateX, op, parseLong(this));
+                case "y":
+                    return compareLong(Movie::getCoordinateY, op, parseLong(this));
+                case "creationDate":
+                    return compareLong(Movie::getCreationEpochDay, op, parseDate(this).toEpochDay());
+                case "oscarsCount":
+                    return compareLong(Movie::getOscarsCount, op, parseLong(this));
+                case "goldenPalmCount":
+                    return compareLong(Movie::getGoldenPalmCount, op, parseLong(this));
+                case "length":
+                    return compareLong(Movie::getLength, op, parseLong(this));
+                case "mpaaRating":
+                    return compareEnum(Movie::getMpaaRating, MpaaRating.class, this);
+                case "screenwriter":
+                    if (value != null || op.isOrdering()) {
+                        throw new IllegalArgumentException("Only 'screenwriter = null' and 'screenwriter != null' are allowed");
+                    }
+                    return op == Op.EQ ? movie -> movie.getScreenwriter() == null : movie -> movie.getScreenwriter() != null;
+                case "screenwriter.name":
+                    return onScreenwriter(value == null ? null : compareString(Person::getName, op, value), op);
+                case "screenwriter.weight":
+                    return onScreenwriter(value == null ? null : compareLong(Person::getWeight, op, parseLong(this)), op);
+                case "screenwriter.eyeColor":
+                    return onScreenwriter(value == null ? null : compareEnum(Person::getEyeColor, Color.class, this), op);
+                case "screenwriter.hairColor":
+                    return onScreenwriter(value == null ? null : compareEnum(Person::getHairColor, Color.class, this), op);
+                case "screenwriter.nationality":
+                    Predicate<Person> nationality = compareEnum(Person::getNationality, Country.class, this);
+                    return movie -> movie.getScreenwriter() != null && nationality.test(movie.getScreenwriter());
+                default:
+                    throw new IllegalArgumentException("Unknown field '" + field + "'");
+            }
+        }
+    }
+
+    /**
+     * a condition on the screenwriter is false for movies without screenwriter,
+     * except the comparison with null (a required field is null only without screenwriter)
+     * @param condition condition on the person, null for the comparison with null
+     */
+    private static Predicate<Movie> onScreenwriter(Predicate<Person> condition, Op op) {
+        if (condition == null) {
+            if (op.isOrdering()) {
+                throw new IllegalArgumentException("Null can be compared only by = and !=");
+            }
+            return op == Op.EQ ? movie -> movie.getScreenwriter() == null : movie -> movie.getScreenwriter() != null;
+        }
+        return movie -> movie.getScreenwriter() != null && condition.test(movie.getScreenwriter());
+    }
+
+    private static <T> Predicate<T> compareLong(ToLongFunction<T> getter, Op op, long value) {
+        switch (op) {
+            case EQ:
+                return t -> getter.applyAsLong(t) == value;
+            case NE:
+                return t -> getter.applyAsLong(t) != value;
+            case LT:
+                return t -> getter.applyAsLong(t) < value;
+            case LE:
+                return t -> getter.applyAsLong(t) <= value;
+            case GT:
+                return t -> getter.applyAsLong(t) > value;
+            default:
+                return t -> getter.applyAsLong(t) >= value;
+        }
+    }
+
+    private static <T> Predicate<T> compareString(Function<T, String> getter, Op op, String value) {
+        switch (op) {
+            case EQ:
+                return t -> getter.apply(t).equals(value);
+            case NE:
+                return t -> !getter.apply(t).equals(value);
+            case LT:
+                return t -> getter.apply(t).compareTo(value) < 0;
+            case LE:
+                return t -> getter.apply(t).compareTo(value) <= 0;
+            case GT:
+                return t -> getter.apply(t).compareTo(value) > 0;
+            default:
+                return t -> getter.apply(t).compareTo(value) >= 0;
+        }
+    }
+
+    /**
+     * enums are compared by identity, only = and != are allowed
+     */
+    private static <T, E extends Enum<E>> Predicate<T> compareEnum(Function<T, E> getter, Class<E> type,
+                                                                   Comparison comparison) {
+        if (comparison.op.isOrdering()) {
+            throw new IllegalArgumentException("Field '" + comparison.field + "' can be compared only by = and !=");
+        }
+        E value = comparison.value == null ? null : parseEnum(type, comparison);
+        return comparison.op == Op.EQ ? t -> getter.apply(t) == value : t -> getter.apply(t) != value;
+    }
+
+    private static String requireValue(Comparison comparison) {
+        if (comparison.value == null) {
+            throw new IllegalArgumentException("Field '" + comparison.field + "' can not be null");
+        }
+        return comparison.value;
+    }
+
+    private static long parseLong(Comparison comparison) {
+        try {
+            return Long.parseLong(requireValue(comparison));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Number is expected for '" + comparison.field + "': " + comparison.value);
+        }
+    }
+
+    private static LocalDate parseDate(Comparison comparison) {
+        try {
+            return LocalDate.parse(requireValue(comparison));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Date yyyy-mm-dd is expected for '" + comparison.field + "': " + comparison.value);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, Comparison comparison) {
+        try {
+            return Enum.valueOf(type, requireValue(comparison));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("One of " + Arrays.toString(type.getEnumConstants())
+                    + " is expected for '" + comparison.field + "': " + comparison.value);
+        }
+    }
+
+    /**
+     * recursive descent parser of the expression
+     */
+    private static class Parser {
+        private final List<String> tokens;
+        /**
+         * tokens that were quoted strings (a quoted "and" or "null" is a value)
+         */
+        private final Set<Integer> quoted = new HashSet<>();
+        private int position = 0;
+
+        Parser(String text) {
+            tokens = tokenize(text);
+        }
+
+        Node parse() {
+            Node node = parseOr();
+            if (position < tokens.size()) {
+                throw new IllegalArgumentException("Unexpected '" + tokens.get(position) + "' in the query");
+            }
+            return node;
+        }
+
+        private Node parseOr() {
+            List<Node> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (isKeyword("or")) {
+                position++;
+                children.add(parseAnd());
+            }
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        private Node parseAnd() {
+            List<Node> children = new ArrayList<>();
+            children.add(parseUnary());
+            while (isKeyword("and")) {
+                position++;
+                children.add(parseUnary());
+            }
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        private Node parseUnary() {
+            if (isKeyword("not")) {
+                position++;
+                return new Not(parseUnary());
+            }
+            if (isKeyword("(")) {
+                position++;
+                Node node = parseOr();
+                expect(")");
+                return node;
+            }
+            String field = next("field name");
+            Op op = parseOp(next("operator"));
+            int valuePosition = position;
+            String value = next("value");
+            if (value.equalsIgnoreCase("null") && !quoted.contains(valuePosition)) {
+                value = null;
+            }
+            return new Comparison(field, op, value);
+        }
+
+        private Op parseOp(String token) {
+            switch (token) {
+                case "=":
+                case "==":
+                    return Op.EQ;
+                case "!=":
+                case "<>":
+                    return Op.NE;
+                case "<":
+                    return Op.LT;
+                case "<=":
+                    return Op.LE;
+                case ">":
+                    return Op.GT;
+                case ">=":
+                    return Op.GE;
+                default:
+                    throw new IllegalArgumentException("Comparison operator is expected instead of '" + token + "'");
+            }
+        }
+
+        private boolean isKeyword(String keyword) {
+            return position < tokens.size() && !quoted.contains(position)
+                    && tokens.get(position).equalsIgnoreCase(keyword);
+        }
+
+        private void expect(String token) {
+            if (!isKeyword(token)) {
+                throw new IllegalArgumentException("'" + token + "' is expected in the query");
+            }
+            position++;
+        }
+
+        private String next(String expected) {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("The query ends where " + expected + " is expected");
+            }
+            return tokens.get(position++);
+        }
+
+        private List<String> tokenize(String text) {
+            List<String> result = new ArrayList<>();
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    result.add(String.valueOf(c));
+                    i++;
+                } else if (c == '\'' || c == '"') {
+                    int end = text.indexOf(c, i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unclosed quote in the query");
+                    }
+                    quoted.add(result.size());
+                    result.add(text.substring(i + 1, end));
+                    i = end + 1;
+                } else if ("=!<>".indexOf(c) >= 0) {
+                    int end = i + 1;
+                    while (end < text.length() && "=<>".indexOf(text.charAt(end)) >= 0 && end - i < 2) {
+                        end++;
+                    }
+                    result.add(text.substring(i, end));
+                    i = end;
+                } else {
+                    int end = i;
+                    while (end < text.length() && !Character.isWhitespace(text.charAt(end))
+                            && "()'\"=!<>".indexOf(text.charAt(end)) < 0) {
+                        end++;
+                    }
+                    result.add(text.substring(i, end));
+                    i = end;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package utils;
+
+import model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of the collection.
+ * <pre>
+ * header:  int magic, short version, int movie count, int string count, int string data size
+ * strings: int offset (relative to string data) per string, then string data
+ *          (int byte length + UTF-8 bytes per string)
+ * movies:  fixed-width records of RECORD_SIZE bytes (see the offsets below)
+ * </pre>
+ * Movie and screenwriter names are dictionary-encoded (a record stores the
+ * string number), enums are stored as ordinals, -1 stands for null.
+ * Fixed-width records allow to find any movie without reading the others
+ */
+public class MovieSnapshot {
+    static final int MAGIC = 0x4D4F5653;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 18;
+    /**
+     * enum values by ordinal (values() copies the array on every call)
+     */
+    static final MpaaRating[] RATINGS = MpaaRating.values();
+    static final Color[] COLORS = Color.values();
+    static final Country[] COUNTRIES = Country.values();
+    private static final String CHANGED_DURING_WRITING = "The collection was changed during writing";
+
+    static final int ID = 0;
+    static final int NAME = 4;
+    static final int X = 8;
+    static final int Y = 12;
+    static final int CREATION_DATE = 20;
+    static final int OSCARS_COUNT = 28;
+    static final int GOLDEN_PALM_COUNT = 32;
+    static final int LENGTH = 36;
+    static final int MPAA_RATING = 44;
+    static final int SCREENWRITER_NAME = 45;
+    static final int WEIGHT = 49;
+    static final int EYE_COLOR = 53;
+    static final int HAIR_COLOR = 54;
+    static final int NATIONALITY = 55;
+    static final int RECORD_SIZE = 56;
+
+    /**
+     * writes the movies as a snapshot
+     * @param movies movies in storage order (iterated twice)
+     * @param out stream for writing data
+     * @throws IOException writing error
+     */
+    public static void write(Iterable<Movie> movies, OutputStream out) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int count = 0;
+        long stringDataSize = 0;
+        for (Movie movie : movies) {
+            count++;
+            stringDataSize += addString(movie.getName(), dictionary, strings);
+            if (movie.getScreenwriter() != null) {
+                stringDataSize += addString(movie.getScreenwriter().getName(), dictionary, strings);
+            }
+        }
+
+        DataOutputStream dos = new DataOutputStream(out);
+        writeHeader(count, strings.size(), stringDataSize, dos);
+        int offset = 0;
+        for (byte[] string : strings) {
+            dos.writeInt(offset);
+            offset += 4 + string.length;
+        }
+        for (byte[] string : strings) {
+            dos.writeInt(string.length);
+            dos.write(string);
+        }
+
+        int written = 0;
+        for (Movie movie : movies) {
+            if (++written > count) {
+                throw new IOException(CHANGED_DURING_WRITING);
+            }
+            Person person = movie.getScreenwriter();
+            writeRecord(movie, dictionary.get(movie.getName()),
+                    person != null ? dictionary.get(person.getName()) : -1, dos);
+        }
+        if (written != count) {
+            throw new IOException(CHANGED_DURING_WRITING);
+        }
+        dos.flush();
+    }
+
+    /**
+     * writes the movies as a snapshot without a dictionary of movie names: every movie
+     * gets its own name string (string number = movie number), only screenwriter names
+     * are deduplicated. The memory does not grow with the number of movies,
+     * so it suits generated collections of any size (their names are mostly unique)
+     * @param movies movies (iterated four times, every iteration must give the same movies)
+     * @param out stream for writing data
+     * @throws IOException writing error
+     */
+    public static void writeStreaming(Iterable<Movie> movies, OutputStream out) throws IOException {
+        Map<String, Integer> screenwriters = new HashMap<>();
+        List<byte[]> screenwriterNames = new ArrayList<>();
+        int count = 0;
+        long stringDataSize = 0;
+        for (Movie movie : movies) {
+            count++;
+            stringDataSize += 4 + movie.getName().getBytes(StandardCharsets.UTF_8).length;
+            if (movie.getScreenwriter() != null) {
+                stringDataSize += addString(movie.getScreenwriter().getName(), screenwriters, screenwriterNames);
+            }
+        }
+
+        DataOutputStream dos = new DataOutputStream(out);
+        writeHeader(count, count + screenwriterNames.size(), stringDataSize, dos);
+        // movie names first, the screenwriter names follow them (number = count + screenwriter number)
+        int offset = 0;
+        int written = 0;
+        for (Movie movie : movies) {
+            if (++written > count) {
+                throw new IOException(CHANGED_DURING_WRITING);
+            }
+            dos.writeInt(offset);
+            offset += 4 + movie.getName().getBytes(StandardCharsets.UTF_8).length;
+        }
+        for (byte[] string : screenwriterNames) {
+            dos.writeInt(offset);
+            offset += 4 + string.length;
+        }
+        if (offset != stringDataSize) {
+            throw new IOException(CHANGED_DURING_WRITING);
+        }
+        for (Movie movie : movies) {
+            writeString(movie.getName(), dos);
+        }
+        for (byte[] string : screenwriterNames) {
+            dos.writeInt(string.length);
+            dos.write(string);
+        }
+
+        written = 0;
+        for (Movie movie : movies) {
+            if (written == count) {
+                throw new IOException(CHANGED_DURING_WRITING);
+            }
+            Person person = movie.getScreenwriter();
+            Integer screenwriter = person != null ? screenwriters.get(person.getName()) : null;
+            if (person != null && screenwriter == null) {
+                throw new IOException(CHANGED_DURING_WRITING);
+            }
+            writeRecord(movie, written++, person != null ? count + screenwriter : -1, dos);
+        }
+        if (written != count) {
+            throw new IOException(CHANGED_DURING_WRITING);
+        }
+        dos.flush();
+    }
+
+    private static void writeHeader(int count, int stringCount, long stringDataSize, DataOutput out)
+            throws IOException {
+        if (stringDataSize > Integer.MAX_VALUE) {
+            throw new IOException("Too many strings for a snapshot");
+        }
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(count);
+        out.writeInt(stringCount);
+        out.writeInt((int) stringDataSize);
+    }
+
+    /**
+     * reads all movies of a snapshot
+     * @param in stream with snapshot data
+     * @return movies in snapshot order
+     * @throws IOException reading error or damaged snapshot
+     */
+    public static List<Movie> read(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        int count = readHeader(dis);
+        String[] strings = new String[dis.readInt()];
+        dis.readInt();
+        dis.skipNBytes(4L * strings.length);
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(dis);
+        }
+
+        List<Movie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            movies.add(readRecord(dis, strings));
+        }
+        return movies;
+    }
+
+    /**
+     * checks magic number and version
+     * @return movie count
+     */
+    static int readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a movie snapshot");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        return in.readInt();
+    }
+
+    /**
+     * writes one movie with its names inline (no dictionary), used by the journal
+     * @param movie
+     * @param out stream for writing data
+     * @throws IOException writing error
+     */
+    static void writeMovie(Movie movie, DataOutput out) throws IOException {
+        writeString(movie.getName(), out);
+        Person person = movie.getScreenwriter();
+        out.writeBoolean(person != null);
+        if (person != null) {
+            writeString(person.getName(), out);
+        }
+        writeRecord(movie, 0, person != null ? 1 : -1, out);
+    }
+
+    /**
+     * reads one movie written by writeMovie
+     * @param in stream with movie data
+     * @return movie
+     * @throws IOException reading error
+     */
+    static Movie readMovie(DataInput in) throws IOException {
+        String[] names = new String[2];
+        names[0] = readString(in);
+        if (in.readBoolean()) {
+            names[1] = readString(in);
+        }
+        return readRecord(in, names);
+    }
+
+    private static void writeString(String string, DataOutput out) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int addString(String string, Map<String, Integer> dictionary, List<byte[]> strings) {
+        if (dictionary.containsKey(string)) {
+            return 0;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        dictionary.put(string, strings.size());
+        strings.add(bytes);
+        return 4 + bytes.length;
+    }
+
+    /**
+     * @param name string number of the movie name
+     * @param screenwriterName string number of the screenwriter name, -1 without screenwriter
+     */
+    private static void writeRecord(Movie movie, int name, int screenwriterName, DataOutput out) throws IOException {
+        Coordinates coordinates = movie.getCoordinates();
+        out.writeInt(movie.getId());
+        out.writeInt(name);
+        out.writeInt(coordinates.getX());
+        out.writeLong(coordinates.getY());
+        out.writeLong(movie.getCreationEpochDay());
+        out.writeInt(movie.getOscarsCount());
+        out.writeInt(movie.getGoldenPalmCount());
+        out.writeLong(movie.getLength());
+        out.writeByte(ordinal(movie.getMpaaRating()));
+        Person person = movie.getScreenwriter();
+        if (person != null) {
+            out.writeInt(screenwriterName);
+            out.writeInt(person.getWeight());
+            out.writeByte(person.getEyeColor().ordinal());
+            out.writeByte(person.getHairColor().ordinal());
+            out.writeByte(ordinal(person.getNationality()));
+        } else {
+            out.writeInt(-1);
+            out.writeInt(0);
+            out.writeByte(-1);
+            out.writeByte(-1);
+            out.writeByte(-1);
+        }
+    }
+
+    private static Movie readRecord(DataInput in, String[] strings) throws IOException {
+        int id = in.readInt();
+        String name = strings[in.readInt()];
+        Coordinates coordinates = new Coordinates(in.readInt(), in.readLong());
+        LocalDate creationDate = LocalDate.ofEpochDay(in.readLong());
+        int oscarsCount = in.readInt();
+        int goldenPalmCount = in.readInt();
+        long length = in.readLong();
+        byte rating = in.readByte();
+        int personName = in.readInt();
+        int weight = in.readInt();
+        byte eyeColor = in.readByte();
+        byte hairColor = in.readByte();
+        byte nationality = in.readByte();
+        Person screenwriter = personName < 0 ? null : new Person(strings[personName],
+                weight,
+                COLORS[eyeColor],
+                COLORS[hairColor],
+                nationality < 0 ? null : COUNTRIES[nationality]);
+        return new Movie(id,
+                name,
+                coordinates,
+                creationDate,
+                oscarsCount,
+                goldenPalmCount,
+                length,
+                rating < 0 ? null : RATINGS[rating],
+                screenwriter);
+    }
+
+    private static int ordinal(Enum<?> value) {
+        return value != null ? value.ordinal() : -1;
+    }
+}
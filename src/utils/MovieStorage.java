@@ -2,59 +2,604 @@ package utils;
 
 import model.Movie;
 import model.MpaaRating;
+import model.Person;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 /**
- * Manipulate with stored movies
+ * Manipulate with stored movies.
+ * Changes are serialized by WRITE_LOCK, readers do not lock: they read the concurrent
+ * skip lists (weakly consistent, see snapshot for a consistent view).
+ * A stored movie is never changed, update replaces it with a new object.
+ * In off-heap mode (see useOffHeap) the movies are kept in OffHeapMovieStore instead
+ * of the skip lists, readers take the lock there
  */
 public class MovieStorage {
-    private static final PriorityQueue<Movie> STORAGE = new PriorityQueue<>();
+    /**
+     * movies ordered by oscars count with id tiebreak (see orderKey)
+     */
+    private static final ConcurrentSkipListMap<Long, Movie> STORAGE = new ConcurrentSkipListMap<>();
+    private static final MovieIdIndex ID_INDEX = new MovieIdIndex();
+    /**
+     * movies grouped by mpaa rating, each bucket in storage order
+     */
+    private static final EnumMap<MpaaRating, MovieBucket> RATING_INDEX = new EnumMap<>(MpaaRating.class);
+    private static final MovieBucket NULL_RATING_BUCKET = new MovieBucket();
+    /**
+     * movies grouped by screenwriter name, each bucket in storage order
+     * (screenwriters are shared through UniqueValuesUtil.internPerson)
+     */
+    private static final ConcurrentHashMap<String, MovieBucket> SCREENWRITER_INDEX = new ConcurrentHashMap<>();
+    private static final MovieBucket NULL_SCREENWRITER_BUCKET = new MovieBucket();
+    /**
+     * movies grouped by creation date (it never changes after creation), ordered by id within a date
+     */
+    private static final ConcurrentSkipListMap<LocalDate, ConcurrentSkipListMap<Integer, Movie>> DATE_INDEX
+            = new ConcurrentSkipListMap<>();
     private static final Date initDate = new Date();
-    private static int currentId = 0;
+    private static final AtomicInteger CURRENT_ID = new AtomicInteger();
+
+    private static final ReentrantLock WRITE_LOCK = new ReentrantLock();
+    /**
+     * odd while a change is in progress, incremented on the start and the end of every change
+     */
+    private static volatile long version = 0;
+    private static final int OPTIMISTIC_SNAPSHOT_ATTEMPTS = 3;
+
+    /**
+     * lazy mode: movies stay in the mapped snapshot until a command needs
+     * the whole collection on heap (see materialize)
+     */
+    private static volatile MappedSnapshot mapped = null;
+    /**
+     * lazy mode rating counts, slot 0 for null and ordinal + 1 for the others
+     * (assigned before mapped, kept after materialize)
+     */
+    private static volatile int[] mappedRatingCounts = null;
+
+    /**
+     * off-heap mode: movies are kept in direct memory, the skip lists stay empty
+     */
+    private static volatile OffHeapMovieStore offHeap = null;
+    private static final int OFF_HEAP_PAGE_SIZE = 256;
+
+    static {
+        for (MpaaRating rating : MpaaRating.values()) {
+            RATING_INDEX.put(rating, new MovieBucket());
+        }
+    }
 
     public static Date getInitDate() {
         return initDate;
     }
 
+    /**
+     * switches to off-heap mode, the collection is cleared (called before loading)
+     */
+    public static void useOffHeap() {
+        beginWrite();
+        try {
+            mapped = null;
+            clearIndexes();
+            offHeap = new OffHeapMovieStore();
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * @return name of the storage structure
+     */
+    public static String getStorageType() {
+        return offHeap != null ? "Off-heap columns" : "ConcurrentSkipListMap";
+    }
+
     /**
      * add movie
      * @param movie
      */
     public static void add(Movie movie) {
-        movie.setId(generateMovieId());
-        STORAGE.add(movie);
-        if (movie.getId() > currentId) {
-            currentId = movie.getId();
+        beginWrite();
+        try {
+            materialize();
+            movie.setId(generateMovieId());
+            insert(movie);
+            Journal.logPut(movie);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * add movie keeping its id (loading from file),
+     * a movie with an id already in use gets a new one
+     * @param movie
+     */
+    public static void restore(Movie movie) {
+        beginWrite();
+        try {
+            materialize();
+            if (containsId(movie.getId())) {
+                add(movie);
+                return;
+            }
+            insert(movie);
+            Journal.logPut(movie);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * add movie with its id or replace the movie with the same id (journal replay)
+     * @param movie
+     */
+    static void put(Movie movie) {
+        beginWrite();
+        try {
+            materialize();
+            Movie curMovie = offHeap != null ? null : ID_INDEX.get(movie.getId());
+            if (curMovie != null) {
+                unlink(curMovie);
+            }
+            insert(movie);
+            Journal.logPut(movie);
+        } finally {
+            endWrite();
+        }
+    }
+
+    private static void insert(Movie movie) {
+        OffHeapMovieStore store = offHeap;
+        if (store != null) {
+            store.put(movie);
+        } else {
+            link(movie);
+            ID_INDEX.put(movie);
+        }
+        CURRENT_ID.accumulateAndGet(movie.getId(), Math::max);
+    }
+
+    /**
+     * puts movie to the storage and the secondary indexes
+     * @param movie
+     */
+    private static void link(Movie movie) {
+        internValues(movie);
+        Long key = orderKey(movie);
+        STORAGE.put(key, movie);
+        linkSecondary(key, movie);
+    }
+
+    /**
+     * @param id
+     * @return true if a movie with the id is stored (on heap or off-heap)
+     */
+    private static boolean containsId(int id) {
+        OffHeapMovieStore store = offHeap;
+        return store != null ? store.contains(id) : ID_INDEX.contains(id);
+    }
+
+    /**
+     * @param key boxed once and shared by the storage and the buckets
+     * @param movie
+     */
+    private static void linkSecondary(Long key, Movie movie) {
+        bucket(movie.getMpaaRating()).add(key, movie);
+        DATE_INDEX.computeIfAbsent(movie.getCreationDate(), date -> new ConcurrentSkipListMap<>())
+                .put(movie.getId(), movie);
+        Person screenwriter = movie.getScreenwriter();
+        if (screenwriter == null) {
+            NULL_SCREENWRITER_BUCKET.add(key, movie);
+        } else {
+            SCREENWRITER_INDEX.computeIfAbsent(screenwriter.getName(), name -> new MovieBucket()).add(key, movie);
+        }
+    }
+
+    /**
+     * shares the name and the screenwriter with the stored movies, called before the movie is stored
+     * @param movie
+     */
+    private static void internValues(Movie movie) {
+        movie.setSharedName(UniqueValuesUtil.internName(movie.getName()));
+        if (movie.getScreenwriter() != null) {
+            movie.setScreenwriter(UniqueValuesUtil.internPerson(movie.getScreenwriter()));
+        }
+    }
+
+    /**
+     * adds a batch of new movies (bulk import).
+     * The movies are grouped by their rating and screenwriter buckets and by creation date:
+     * every bucket and date is looked up once per group and a bucket count is changed once
+     * per group. The key of a movie is boxed once and shared by the storage and its buckets
+     * @param movies batch of movies with ids from generateMovieId (the list is sorted)
+     */
+    public static void addAll(List<Movie> movies) {
+        movies.sort(Comparator.comparingLong(MovieStorage::orderKey));
+        beginWrite();
+        try {
+            materialize();
+            if (offHeap != null) {
+                for (Movie movie : movies) {
+                    offHeap.put(movie);
+                    Journal.logPut(movie);
+                }
+                return;
+            }
+            int size = movies.size();
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                Movie movie = movies.get(i);
+                internValues(movie);
+                keys[i] = orderKey(movie);
+            }
+            BatchGroups<List<MovieBucket>> buckets = new BatchGroups<>(size,
+                    i -> List.of(bucket(movies.get(i).getMpaaRating()), screenwriterBucketFor(movies.get(i))));
+            for (int group = 0; group < buckets.size(); group++) {
+                MovieBucket ratingBucket = buckets.key(group).get(0);
+                MovieBucket screenwriterBucket = buckets.key(group).get(1);
+                int ratingAdded = 0;
+                int screenwriterAdded = 0;
+                for (int j = buckets.start(group); j < buckets.start(group + 1); j++) {
+                    int i = buckets.movie(j);
+                    Movie movie = movies.get(i);
+                    Long key = keys[i];
+                    STORAGE.put(key, movie);
+                    ID_INDEX.put(movie);
+                    ratingAdded += ratingBucket.put(key, movie) ? 1 : 0;
+                    screenwriterAdded += screenwriterBucket.put(key, movie) ? 1 : 0;
+                    Journal.logPut(movie);
+                }
+                ratingBucket.addCount(ratingAdded);
+                screenwriterBucket.addCount(screenwriterAdded);
+            }
+            BatchGroups<LocalDate> dates = new BatchGroups<>(size, i -> movies.get(i).getCreationDate());
+            for (int group = 0; group < dates.size(); group++) {
+                ConcurrentSkipListMap<Integer, Movie> sameDate
+                        = DATE_INDEX.computeIfAbsent(dates.key(group), date -> new ConcurrentSkipListMap<>());
+                for (int j = dates.start(group); j < dates.start(group + 1); j++) {
+                    Movie movie = movies.get(dates.movie(j));
+                    sameDate.put(movie.getId(), movie);
+                }
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * @return screenwriter bucket of the movie, created for a new screenwriter
+     */
+    private static MovieBucket screenwriterBucketFor(Movie movie) {
+        Person screenwriter = movie.getScreenwriter();
+        return screenwriter == null ? NULL_SCREENWRITER_BUCKET
+                : SCREENWRITER_INDEX.computeIfAbsent(screenwriter.getName(), name -> new MovieBucket());
+    }
+
+    /**
+     * numbers of the movies of a batch ordered by group (counting sort),
+     * the movies of a group keep their order in the batch
+     * @param <G> group key (compared by equals)
+     */
+    private static class BatchGroups<G> {
+        private final List<G> keys = new ArrayList<>();
+        /**
+         * the movies of group g are order[starts[g]] .. order[starts[g + 1] - 1]
+         */
+        private final int[] starts;
+        private final int[] order;
+
+        BatchGroups(int size, IntFunction<G> groupOf) {
+            Map<G, Integer> numbers = new HashMap<>();
+            int[] groups = new int[size];
+            for (int i = 0; i < size; i++) {
+                G key = groupOf.apply(i);
+                Integer number = numbers.get(key);
+                if (number == null) {
+                    number = keys.size();
+                    numbers.put(key, number);
+                    keys.add(key);
+                }
+                groups[i] = number;
+            }
+            starts = new int[keys.size() + 1];
+            for (int group : groups) {
+                starts[group + 1]++;
+            }
+            for (int group = 0; group < keys.size(); group++) {
+                starts[group + 1] += starts[group];
+            }
+            int[] next = Arrays.copyOf(starts, keys.size());
+            order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[next[groups[i]]++] = i;
+            }
+        }
+
+        int size() {
+            return keys.size();
+        }
+
+        G key(int group) {
+            return keys.get(group);
+        }
+
+        int start(int group) {
+            return starts[group];
+        }
+
+        int movie(int position) {
+            return order[position];
+        }
+    }
+
+    /**
+     * removes movie from the storage and the secondary indexes (not from the id index)
+     * @param movie
+     */
+    private static void unlink(Movie movie) {
+        long key = orderKey(movie);
+        STORAGE.remove(key);
+        bucket(movie.getMpaaRating()).remove(key);
+        unlinkDate(movie);
+        unlinkScreenwriter(key, movie);
+    }
+
+    /**
+     * the name of the screenwriter is unregistered with the last movie of it
+     */
+    private static void unlinkScreenwriter(long key, Movie movie) {
+        Person screenwriter = movie.getScreenwriter();
+        if (screenwriter == null) {
+            NULL_SCREENWRITER_BUCKET.remove(key);
+            return;
+        }
+        MovieBucket bucket = SCREENWRITER_INDEX.get(screenwriter.getName());
+        if (bucket != null) {
+            bucket.remove(key);
+            if (bucket.count == 0) {
+                SCREENWRITER_INDEX.remove(screenwriter.getName());
+                UniqueValuesUtil.removePerson(screenwriter);
+            }
+        }
+    }
+
+    private static void unlinkDate(Movie movie) {
+        ConcurrentSkipListMap<Integer, Movie> sameDate = DATE_INDEX.get(movie.getCreationDate());
+        if (sameDate != null) {
+            sameDate.remove(movie.getId());
+            if (sameDate.isEmpty()) {
+                DATE_INDEX.remove(movie.getCreationDate());
+            }
         }
     }
 
     /**
-     * generate movie id
-     * @return currentId
+     * generate movie id (safe without the lock)
+     * @return new id
      */
     public static int generateMovieId() {
-        return ++currentId;
+        return CURRENT_ID.incrementAndGet();
     }
 
     /**
      * cleans the collection
      */
     public static void clear() {
-        STORAGE.clear();
+        beginWrite();
+        try {
+            mapped = null;
+            clearIndexes();
+            Journal.logClear();
+        } finally {
+            endWrite();
+        }
     }
 
     /**
-     * obtaining storage iterator
+     * obtaining storage iterator (ordered by oscars count)
      * @return Storage.iterator()
      */
     public static Iterator<Movie> getIterator() {
-        return STORAGE.iterator();
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            return snapshot.iterator();
+        }
+        return getIterator(0);
+    }
+
+    /**
+     * obtaining storage iterator starting from a position (ordered by oscars count)
+     * @param offset number of movies to skip
+     * @return iterator
+     */
+    public static Iterator<Movie> getIterator(int offset) {
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            return snapshot.iterator(offset);
+        }
+        OffHeapMovieStore store = offHeap;
+        if (store != null) {
+            return offHeapIterator(store, offset);
+        }
+        Iterator<Movie> iterator = STORAGE.values().iterator();
+        for (int i = 0; i < offset && iterator.hasNext(); i++) {
+            iterator.next();
+        }
+        return iterator;
+    }
+
+    /**
+     * iterates the off-heap store by pages decoded under the lock,
+     * a page starts after the storage key of the last movie seen (weakly consistent, like the skip list)
+     */
+    private static Iterator<Movie> offHeapIterator(OffHeapMovieStore store, int offset) {
+        long start;
+        WRITE_LOCK.lock();
+        try {
+            start = offset == 0 ? Long.MIN_VALUE : store.keyAt(offset - 1);
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+        if (start == -1) {
+            return Collections.emptyIterator();
+        }
+        return new Iterator<Movie>() {
+            private long lastKey = start;
+            private List<Movie> page = Collections.emptyList();
+            private int next = 0;
+            private boolean isLastPage = false;
+
+            @Override
+            public boolean hasNext() {
+                if (next < page.size()) {
+                    return true;
+                }
+                if (isLastPage) {
+                    return false;
+                }
+                WRITE_LOCK.lock();
+                try {
+                    page = store.page(lastKey, OFF_HEAP_PAGE_SIZE);
+                } finally {
+                    WRITE_LOCK.unlock();
+                }
+                next = 0;
+                isLastPage = page.size() < OFF_HEAP_PAGE_SIZE;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public Movie next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Movie movie = page.get(next++);
+                lastKey = orderKey(movie);
+                return movie;
+            }
+        };
+    }
+
+    /**
+     * consistent view of the collection: the movies stored at one moment, in storage order.
+     * Changes may go on during the iteration (autosave), they are not seen by the view.
+     * The storage is copied without the lock if no change runs meanwhile,
+     * otherwise under the lock (only writers wait for it)
+     * @return unmodifiable list of movies
+     */
+    public static List<Movie> snapshot() {
+        for (int i = 0; i < OPTIMISTIC_SNAPSHOT_ATTEMPTS && offHeap == null; i++) {
+            long start = version;
+            if ((start & 1) == 0) {
+                List<Movie> movies = copyStorage();
+                if (version == start) {
+                    return movies;
+                }
+            }
+            Thread.yield();
+        }
+        WRITE_LOCK.lock();
+        try {
+            return copyStorage();
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * runs an action while no change is in progress,
+     * the storage and the journal stay at the same point during the action
+     * (snapshot may be called from it)
+     * @param action short action, changes wait for it
+     */
+    static void runExclusive(Runnable action) {
+        WRITE_LOCK.lock();
+        try {
+            action.run();
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * @return number that changes with every change of the collection
+     */
+    static long getVersion() {
+        return version;
+    }
+
+    private static List<Movie> copyStorage() {
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            // the mapped file never changes, movies are decoded on access
+            return new AbstractList<Movie>() {
+                @Override
+                public Movie get(int index) {
+                    return snapshot.get(index);
+                }
+
+                @Override
+                public int size() {
+                    return snapshot.size();
+                }
+            };
+        }
+        OffHeapMovieStore store = offHeap;
+        if (store != null) {
+            // the columns are copied in direct memory, movies are decoded on access
+            return Collections.unmodifiableList(store.copy());
+        }
+        return Collections.unmodifiableList(new ArrayList<>(STORAGE.values()));
+    }
+
+    /**
+     * obtaining movie by id (the id index is read under the lock)
+     * @param id
+     * @return movie or null if there is no such id
+     */
+    public static Movie getById(int id) {
+        WRITE_LOCK.lock();
+        try {
+            materialize();
+            return offHeap != null ? offHeap.get(id) : ID_INDEX.get(id);
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * obtaining the first movie in order
+     * @return movie with the lowest oscars count or null for empty collection
+     */
+    public static Movie head() {
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            return snapshot.size() > 0 ? snapshot.get(0) : null;
+        }
+        if (offHeap != null) {
+            Iterator<Movie> iterator = getIterator(0);
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+        Map.Entry<Long, Movie> first = STORAGE.firstEntry();
+        return first != null ? first.getValue() : null;
     }
 
     public static int size() {
-        return STORAGE.size();
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            return snapshot.size();
+        }
+        OffHeapMovieStore store = offHeap;
+        return store != null ? store.size() : ID_INDEX.size();
     }
 
     /**
@@ -63,20 +608,35 @@ public class MovieStorage {
      * @param movie
      */
     public static void update(int id, Movie movie) {
-        Iterator<Movie> iterator = STORAGE.iterator();
-        while (iterator.hasNext()) {
-            Movie curMovie = iterator.next();
-            if (curMovie.getId() == id) {
-                curMovie.update(
-                        movie.getName(),
-                        movie.getCoordinates(),
-                        movie.getOscarsCount(),
-                        movie.getGoldenPalmCount(),
-                        movie.getLength(),
-                        movie.getMpaaRating(),
-                        movie.getScreenwriter()
-                );
+        beginWrite();
+        try {
+            materialize();
+            Movie curMovie = offHeap != null ? offHeap.get(id) : ID_INDEX.get(id);
+            if (curMovie == null) {
+                return;
+            }
+            // readers may hold the stored movie, so it is replaced instead of changed
+            Movie newMovie = new Movie(
+                    id,
+                    movie.getName(),
+                    movie.getCoordinates(),
+                    curMovie.getCreationDate(),
+                    movie.getOscarsCount(),
+                    movie.getGoldenPalmCount(),
+                    movie.getLength(),
+                    movie.getMpaaRating(),
+                    movie.getScreenwriter()
+            );
+            if (offHeap != null) {
+                offHeap.put(newMovie);
+            } else {
+                unlink(curMovie);
+                link(newMovie);
+                ID_INDEX.put(newMovie);
             }
+            Journal.logPut(newMovie);
+        } finally {
+            endWrite();
         }
     }
 
@@ -85,13 +645,22 @@ public class MovieStorage {
      * @param id
      */
     public static void removeById(int id) {
-        Iterator<Movie> iterator = STORAGE.iterator();
-        while (iterator.hasNext()) {
-            Movie curMovie = iterator.next();
-            if (curMovie.getId() == id) {
-                STORAGE.remove(curMovie);
+        beginWrite();
+        try {
+            materialize();
+            if (offHeap != null) {
+                if (offHeap.remove(id)) {
+                    Journal.logRemoveById(id);
+                }
                 return;
             }
+            Movie curMovie = ID_INDEX.remove(id);
+            if (curMovie != null) {
+                unlink(curMovie);
+                Journal.logRemoveById(id);
+            }
+        } finally {
+            endWrite();
         }
     }
 
@@ -100,15 +669,26 @@ public class MovieStorage {
      * @param movie
      */
     public static void removeGreater(Movie movie) {
-        Iterator<Movie> iterator = STORAGE.iterator();
-        List<Movie> moviesToRemove = new ArrayList<>();
-        while (iterator.hasNext()) {
-            Movie curMovie = iterator.next();
-            if (movie.compareTo(curMovie) < 0) {
-                moviesToRemove.add(curMovie);
+        removeGreater(movie.getOscarsCount());
+    }
+
+    /**
+     * remove movies with greater oscars count
+     * @param oscarsCount
+     */
+    public static void removeGreater(int oscarsCount) {
+        beginWrite();
+        try {
+            materialize();
+            if (offHeap != null) {
+                offHeap.removeGreater(oscarsCount);
+            } else {
+                removeRange(STORAGE.tailMap(orderKey(oscarsCount, -1), false));
             }
+            Journal.logRemoveGreater(oscarsCount);
+        } finally {
+            endWrite();
         }
-        moviesToRemove.forEach(STORAGE::remove);
     }
 
     /**
@@ -116,88 +696,412 @@ public class MovieStorage {
      * @param movie
      */
     public static void removeLower(Movie movie) {
-        Iterator<Movie> iterator = STORAGE.iterator();
-        List<Movie> moviesToRemove = new ArrayList<>();
-        while (iterator.hasNext()) {
-            Movie curMovie = iterator.next();
-            if (movie.compareTo(curMovie) > 0) {
-                moviesToRemove.add(curMovie);
+        removeLower(movie.getOscarsCount());
+    }
+
+    /**
+     * remove movies with lower oscars count
+     * @param oscarsCount
+     */
+    public static void removeLower(int oscarsCount) {
+        beginWrite();
+        try {
+            materialize();
+            if (offHeap != null) {
+                offHeap.removeLower(oscarsCount);
+            } else {
+                removeRange(STORAGE.headMap(orderKey(oscarsCount, 0)));
             }
+            Journal.logRemoveLower(oscarsCount);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * remove a range of the storage together with the index entries
+     * @param range view of the storage
+     */
+    private static void removeRange(ConcurrentNavigableMap<Long, Movie> range) {
+        for (Map.Entry<Long, Movie> entry : range.entrySet()) {
+            ID_INDEX.remove(entry.getValue().getId());
+            bucket(entry.getValue().getMpaaRating()).remove(entry.getKey());
+            unlinkDate(entry.getValue());
+            unlinkScreenwriter(entry.getKey(), entry.getValue());
+        }
+        range.clear();
+    }
+
+    private static void clearIndexes() {
+        if (offHeap != null) {
+            offHeap.clear();
+        }
+        STORAGE.clear();
+        ID_INDEX.clear();
+        for (MovieBucket bucket : RATING_INDEX.values()) {
+            bucket.clear();
         }
-        moviesToRemove.forEach(STORAGE::remove);
+        NULL_RATING_BUCKET.clear();
+        DATE_INDEX.clear();
+        SCREENWRITER_INDEX.clear();
+        NULL_SCREENWRITER_BUCKET.clear();
+        UniqueValuesUtil.clearPersons();
+        UniqueValuesUtil.clearNames();
     }
 
     /**
      * obtaining movie with max date
-     * @return movie with max date
+     * @return movie with max date (the lowest id among equal dates)
      */
     public static Movie getMaxCreationDate() {
-        LocalDate max = LocalDate.MIN;
-        Movie movieMaxDate = null;
-        for (Movie movie : STORAGE) {
-            if (movie.getCreationDate().isAfter(max)) {
-                max = movie.getCreationDate();
-                movieMaxDate = movie;
+        return getExtremeCreationDate(true);
+    }
+
+    /**
+     * obtaining movie with min date
+     * @return movie with min date (the lowest id among equal dates)
+     */
+    public static Movie getMinCreationDate() {
+        return getExtremeCreationDate(false);
+    }
+
+    private static Movie getExtremeCreationDate(boolean max) {
+        Movie movie = null;
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            long extremeDay = 0;
+            int extremeIndex = -1;
+            for (int i = 0; i < snapshot.size(); i++) {
+                long day = snapshot.getCreationEpochDay(i);
+                // the lowest id of the extreme date, as in the date index
+                if (extremeIndex < 0 || (max ? day > extremeDay : day < extremeDay)
+                        || (day == extremeDay && snapshot.getId(i) < snapshot.getId(extremeIndex))) {
+                    extremeDay = day;
+                    extremeIndex = i;
+                }
             }
-        }
-        if (movieMaxDate != null) {
-            return movieMaxDate;
+            movie = extremeIndex >= 0 ? snapshot.get(extremeIndex) : null;
+        } else if (offHeap != null) {
+            movie = readOffHeap(store -> store.getExtremeCreationDate(max));
         } else {
+            // a date group may be emptied by a concurrent change before it is removed
+            for (ConcurrentSkipListMap<Integer, Movie> sameDate
+                    : (max ? DATE_INDEX.descendingMap() : DATE_INDEX).values()) {
+                Map.Entry<Integer, Movie> first = sameDate.firstEntry();
+                if (first != null) {
+                    movie = first.getValue();
+                    break;
+                }
+            }
+        }
+        if (movie == null) {
 //            throw new RuntimeException("No such element in collection");
-            System.out.println("No such element in collection.");
+            OutputSink.println("No such element in collection.");
+        }
+        return movie;
+    }
+
+    /**
+     * obtaining movies created in the range of dates
+     * @param from first date (inclusive)
+     * @param to last date (inclusive)
+     * @return movies ordered by creation date and id
+     */
+    public static List<Movie> filterByCreationDate(LocalDate from, LocalDate to) {
+        List<Movie> movies = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return movies;
+        }
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            long fromDay = from.toEpochDay();
+            long toDay = to.toEpochDay();
+            for (int i = 0; i < snapshot.size(); i++) {
+                long day = snapshot.getCreationEpochDay(i);
+                if (day >= fromDay && day <= toDay) {
+                    movies.add(snapshot.get(i));
+                }
+            }
+            movies.sort(Comparator.comparing(Movie::getCreationDate).thenComparingInt(Movie::getId));
+            return movies;
+        }
+        if (offHeap != null) {
+            return readOffHeap(store -> store.filterByCreationDate(from.toEpochDay(), to.toEpochDay()));
+        }
+        for (ConcurrentSkipListMap<Integer, Movie> sameDate : DATE_INDEX.subMap(from, true, to, true).values()) {
+            movies.addAll(sameDate.values());
         }
-        return movieMaxDate;
+        return movies;
     }
 
     /**
      * count by Mpaa Rating
-     * @param rating
+     * @param rating rating or null for movies without rating
      * @return count
      */
     public static int countByMpaaRating(MpaaRating rating) {
-        int count = 0;
-        for (Movie movie : STORAGE) {
-            try {
-                if (movie.getMpaaRating().equals(rating)) {
+        if (mapped != null) {
+            // the counts are assigned before mapped and kept after materialize
+            return mappedRatingCounts[ratingSlot(rating)];
+        }
+        if (offHeap != null) {
+            return readOffHeap(store -> store.countByMpaaRating(rating));
+        }
+        return bucket(rating).count;
+    }
+
+    /**
+     * obtaining filter by Mpaa Rating
+     * @param rating rating or null for movies without rating
+     * @return movies in storage order
+     */
+    public static List<Movie> filterByMpaaRating(MpaaRating rating) {
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            List<Movie> movies = new ArrayList<>();
+            int ordinal = ratingSlot(rating) - 1;
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (snapshot.getRatingOrdinal(i) == ordinal) {
+                    movies.add(snapshot.get(i));
+                }
+            }
+            return movies;
+        }
+        if (offHeap != null) {
+            return readOffHeap(store -> store.filterByMpaaRating(rating));
+        }
+        return new ArrayList<>(bucket(rating).movies.values());
+    }
+
+    /**
+     * count by screenwriter
+     * @param name screenwriter name or null for movies without screenwriter
+     * @return count
+     */
+    public static int countByScreenwriter(String name) {
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            int count = 0;
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (hasScreenwriter(snapshot.get(i), name)) {
                     count++;
                 }
-            } catch (Exception e) {
-                System.out.println("'" + movie.getName() + "' is not counted, since the MPAA Rating field is empty.");
             }
+            return count;
         }
-        return count;
+        if (offHeap != null) {
+            return readOffHeap(store -> store.countByScreenwriter(name));
+        }
+        MovieBucket bucket = screenwriterBucket(name);
+        return bucket != null ? bucket.count : 0;
     }
 
     /**
-     * obtaining filter by Mpaa Rating
-     * @param rating
-     * @return movies
+     * obtaining filter by screenwriter
+     * @param name screenwriter name or null for movies without screenwriter
+     * @return movies in storage order
      */
-    public static List<Movie> filterByMpaaRating(MpaaRating rating) {
-        List<Movie> movies = new ArrayList<>();
-        for (Movie movie : STORAGE) {
-            try {
-                if (movie.getMpaaRating().equals(rating)) {
+    public static List<Movie> filterByScreenwriter(String name) {
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            List<Movie> movies = new ArrayList<>();
+            for (int i = 0; i < snapshot.size(); i++) {
+                Movie movie = snapshot.get(i);
+                if (hasScreenwriter(movie, name)) {
                     movies.add(movie);
                 }
-            } catch (Exception e) {
-//                e.printStackTrace();
             }
+            return movies;
+        }
+        if (offHeap != null) {
+            return readOffHeap(store -> store.filterByScreenwriter(name));
+        }
+        MovieBucket bucket = screenwriterBucket(name);
+        return bucket != null ? new ArrayList<>(bucket.movies.values()) : new ArrayList<>();
+    }
+
+    /**
+     * reads the off-heap store under the lock
+     * (called in off-heap mode, the store is never replaced afterwards)
+     */
+    private static <T> T readOffHeap(Function<OffHeapMovieStore, T> query) {
+        WRITE_LOCK.lock();
+        try {
+            return query.apply(offHeap);
+        } finally {
+            WRITE_LOCK.unlock();
         }
-        return movies;
+    }
+
+    /**
+     * copies a numeric field of all movies into a primitive array for aggregate queries
+     * (see Aggregates), the values are taken at one version of the collection
+     * @param field
+     * @return column marked with the version (an older one if a change runs meanwhile)
+     */
+    static Aggregates.Column readColumn(Aggregates.Field field) {
+        long start = version;
+        MappedSnapshot snapshot = mapped;
+        if (snapshot != null) {
+            // the mapped file never changes, the fields are read without decoding the movies
+            return snapshot.readColumn(start, field);
+        }
+        if (offHeap != null) {
+            return readOffHeap(store -> store.readColumn(version, field));
+        }
+        List<Movie> movies = snapshot();
+        return Aggregates.copyColumn(start, field, movies.size(), movies::get);
+    }
+
+    private static MovieBucket screenwriterBucket(String name) {
+        return name != null ? SCREENWRITER_INDEX.get(name) : NULL_SCREENWRITER_BUCKET;
+    }
+
+    private static boolean hasScreenwriter(Movie movie, String name) {
+        Person screenwriter = movie.getScreenwriter();
+        return name == null ? screenwriter == null : screenwriter != null && screenwriter.getName().equals(name);
     }
 
     public static List<Movie> getStorageAsList() {
-        return new ArrayList<>(STORAGE);
+        return new ArrayList<>(snapshot());
     }
 
     /**
      * obtaining sorted list
+     * (the storage is already ordered, so no sorting is needed)
      * @return movies
      */
     public static List<Movie> getSortedListByOscarCount() {
-        List<Movie> movies = getStorageAsList();
-        movies.sort(Movie::compareTo);
-        return movies;
+        return getStorageAsList();
+    }
+
+    /**
+     * switch to lazy mode: the collection is served from a mapped snapshot
+     * until a change or a lookup by id is requested
+     * (a file that is not in storage order is sorted by a table of record numbers)
+     * @param snapshot mapped snapshot file
+     */
+    static void attach(MappedSnapshot snapshot) {
+        int[] ratingCounts = new int[MpaaRating.values().length + 1];
+        int maxId = 0;
+        boolean isOrdered = true;
+        long lastKey = Long.MIN_VALUE;
+        for (int i = 0; i < snapshot.size(); i++) {
+            maxId = Math.max(maxId, snapshot.getId(i));
+            ratingCounts[snapshot.getRatingOrdinal(i) + 1]++;
+            long key = snapshot.getOrderKey(i);
+            isOrdered &= key >= lastKey;
+            lastKey = key;
+        }
+        if (!isOrdered) {
+            snapshot.sortByStorageOrder();
+        }
+        beginWrite();
+        try {
+            clearIndexes();
+            CURRENT_ID.accumulateAndGet(maxId, Math::max);
+            mappedRatingCounts = ratingCounts;
+            mapped = snapshot;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * leaves lazy mode: decodes all movies of the mapped snapshot to the heap,
+     * readers keep using the mapped snapshot until the storage is filled.
+     * Called by writers under the lock
+     */
+    private static void materialize() {
+        MappedSnapshot snapshot = mapped;
+        if (snapshot == null) {
+            return;
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            Movie movie = snapshot.get(i);
+            if (containsId(movie.getId())) {
+                movie.setId(generateMovieId());
+            }
+            insert(movie);
+        }
+        mapped = null;
+    }
+
+    /**
+     * starts a change: takes the lock (reentrant) and marks the version as changing
+     */
+    private static void beginWrite() {
+        WRITE_LOCK.lock();
+        if (WRITE_LOCK.getHoldCount() == 1) {
+            version++;
+        }
+    }
+
+    private static void endWrite() {
+        if (WRITE_LOCK.getHoldCount() == 1) {
+            version++;
+        }
+        WRITE_LOCK.unlock();
+    }
+
+    private static MovieBucket bucket(MpaaRating rating) {
+        return rating != null ? RATING_INDEX.get(rating) : NULL_RATING_BUCKET;
+    }
+
+    private static int ratingSlot(MpaaRating rating) {
+        return rating != null ? rating.ordinal() + 1 : 0;
+    }
+
+    /**
+     * movies with the same mpaa rating or screenwriter keyed by storage key,
+     * the count is kept apart since the size of a skip list is computed by traversal
+     */
+    private static class MovieBucket {
+        private final ConcurrentSkipListMap<Long, Movie> movies = new ConcurrentSkipListMap<>();
+        /**
+         * changed under the lock, read without it
+         */
+        private volatile int count = 0;
+
+        void add(Long key, Movie movie) {
+            if (movies.put(key, movie) == null) {
+                count++;
+            }
+        }
+
+        /**
+         * puts a movie without counting it (see addCount)
+         * @return true if the key is new in the bucket
+         */
+        boolean put(Long key, Movie movie) {
+            return movies.put(key, movie) == null;
+        }
+
+        void addCount(int added) {
+            count += added;
+        }
+
+        void remove(long key) {
+            if (movies.remove(key) != null) {
+                count--;
+            }
+        }
+
+        void clear() {
+            movies.clear();
+            count = 0;
+        }
+    }
+
+    /**
+     * storage key: oscars count in the high half, id in the low half,
+     * so the key order matches Movie.compareTo with id tiebreak
+     */
+    private static long orderKey(Movie movie) {
+        return orderKey(movie.getOscarsCount(), movie.getId());
+    }
+
+    static long orderKey(long oscarsCount, int id) {
+        return (oscarsCount << 32) | (id & 0xFFFFFFFFL);
     }
-}
\ No newline at end of file
+}
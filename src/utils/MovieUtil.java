@@ -4,7 +4,6 @@ import model.*;
 
 import java.time.LocalDate;
 import java.util.Arrays;
-import java.util.Scanner;
 import java.util.stream.Collectors;
 
 /**
@@ -29,12 +28,20 @@ public class MovieUtil {
     private static final String UNITS = Arrays.stream(MpaaRating.values()).map(Enum::name)
             .collect(Collectors.joining(", "));
 
+    /**
+     * Fields of a one-line movie literal, the screenwriter fields are optional
+     */
+    public static final String LITERAL_FORMAT =
+            "name,x,y,oscarsCount,goldenPalmCount,length,mpaaRating[,personName,weight,eyeColor,hairColor,nationality]";
+    private static final int MOVIE_FIELDS = 7;
+    private static final int PERSON_FIELDS = 5;
+
     /**
      * creates Movie
      * @param scan provides params of a Movie
      * @return crated Movie
      */
-    public static Movie createMovie(Scanner scan) {
+    public static Movie createMovie(LineReader scan) {
         MovieBuilder mb = readMovie(scan, null);
         return new Movie(MovieStorage.generateMovieId(),
                 mb.name,
@@ -47,11 +54,65 @@ public class MovieUtil {
                 mb.screenwriter);
     }
 
+    /**
+     * creates Movie from a one-line literal (see LITERAL_FORMAT and MovieLiteral),
+     * empty mpaa rating and nationality stand for null
+     * @param literal comma-separated fields
+     * @return created Movie
+     * @throws IllegalArgumentException illegal literal or field value
+     */
+    public static Movie parseMovie(String literal) {
+        try {
+            return parseMovie(splitLiteral(literal));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Illegal movie literal" + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param literal comma-separated fields (a movie literal or a line of a CSV file)
+     * @return fields of the literal
+     * @throws IllegalArgumentException too many fields or an unclosed quote
+     */
+    static MovieLiteral splitLiteral(String literal) {
+        return new MovieLiteral(literal, MOVIE_FIELDS + PERSON_FIELDS);
+    }
+
+    /**
+     * creates Movie from parsed fields
+     * @param fields movie fields (see LITERAL_FORMAT)
+     * @return created Movie
+     * @throws IllegalArgumentException illegal number of fields or field value
+     */
+    static Movie parseMovie(MovieLiteral fields) {
+        if (fields.size() != MOVIE_FIELDS && fields.size() != MOVIE_FIELDS + PERSON_FIELDS) {
+            throw new IllegalArgumentException(MOVIE_FIELDS + " or " + (MOVIE_FIELDS + PERSON_FIELDS)
+                    + " fields are expected, found " + fields.size());
+        }
+        Person screenwriter = null;
+        if (fields.size() > MOVIE_FIELDS) {
+            screenwriter = new Person(fields.text(7),
+                    fields.intValue(8),
+                    fields.enumValue(9, Color.values()),
+                    fields.enumValue(10, Color.values()),
+                    fields.enumValue(11, Country.values()));
+        }
+        return new Movie(MovieStorage.generateMovieId(),
+                fields.text(0),
+                new Coordinates(fields.intValue(1), fields.longValue(2)),
+                LocalDate.now(),
+                fields.intValue(3),
+                fields.intValue(4),
+                fields.longValue(5),
+                fields.enumValue(6, MpaaRating.values()),
+                screenwriter);
+    }
+
     /**
      * simplifies movie creation
      * (movie parameters have restrictions)
      */
-    private static MovieBuilder readMovie(Scanner scan, Movie movie) {
+    private static MovieBuilder readMovie(LineReader scan, Movie movie) {
         final MovieBuilder mb = new MovieBuilder();
         Runnable[] paramFillingRunnable = {() -> mb.name = getName(scan),
                 () -> mb.coordinates = getCoordinates(scan),
@@ -75,8 +136,10 @@ public class MovieUtil {
                     counter++;
                     if (!((maxError - counter) >= 0)) {
                         System.out.println("\nooops... something went wrong.");
-                        FileAccessor.writeXmlFile();
-                        System.out.println("Collection saved.");
+                        Autosave.stop();
+                        if (FileAccessor.save()) {
+                            System.out.println("Collection saved.");
+                        }
                         System.out.println("The program terminated.");
                         System.exit(0);
                     }
@@ -91,9 +154,9 @@ public class MovieUtil {
      * @param scan
      * @return name
      */
-    private static String getName(Scanner scan) {
-        System.out.println("Enter a movie name");
-        System.out.println("The field cannot be empty.");
+    private static String getName(LineReader scan) {
+        OutputSink.prompt("Enter a movie name");
+        OutputSink.prompt("The field cannot be empty.");
         String name = scan.nextLine().trim();
         validateMovieParams(name != null && !name.isEmpty());
 
@@ -105,12 +168,12 @@ public class MovieUtil {
      * @param scan
      * @return coordinates
      */
-    private static Coordinates getCoordinates(Scanner scan) {
-        System.out.println("Enter a movie x coordinates:");
-        System.out.println("The field must be more than -162");
+    private static Coordinates getCoordinates(LineReader scan) {
+        OutputSink.prompt("Enter a movie x coordinates:");
+        OutputSink.prompt("The field must be more than -162");
         Integer x = Integer.valueOf(scan.nextLine().trim());
-        System.out.println("Enter a movie y coordinates:");
-        System.out.println("The field must be no more than 232");
+        OutputSink.prompt("Enter a movie y coordinates:");
+        OutputSink.prompt("The field must be no more than 232");
         Long y = Long.valueOf(scan.nextLine().trim());
 
         return new Coordinates(x, y);
@@ -121,9 +184,9 @@ public class MovieUtil {
      * @param scan
      * @return oscars count
      */
-    private static Integer getOscarsCount(Scanner scan) {
-        System.out.println("Enter a movie oscars count ");
-        System.out.println("The field must be more than 0");
+    private static Integer getOscarsCount(LineReader scan) {
+        OutputSink.prompt("Enter a movie oscars count ");
+        OutputSink.prompt("The field must be more than 0");
         Integer oscarsCount = Integer.valueOf(scan.nextLine().trim());
         validateMovieParams(oscarsCount > 0);
 
@@ -135,9 +198,9 @@ public class MovieUtil {
      * @param scan
      * @return golden palm count
      */
-    private static int getGoldenPalmCount(Scanner scan) {
-        System.out.println("Enter a movie golden palm count ");
-        System.out.println("The field must be more than 0");
+    private static int getGoldenPalmCount(LineReader scan) {
+        OutputSink.prompt("Enter a movie golden palm count ");
+        OutputSink.prompt("The field must be more than 0");
         Integer goldenPalmCount = Integer.valueOf(scan.nextLine().trim());
         validateMovieParams(goldenPalmCount > 0);
 
@@ -149,9 +212,9 @@ public class MovieUtil {
      * @param scan
      * @return movie length
      */
-    private static long getLength(Scanner scan) {
-        System.out.println("Enter a movie length ");
-        System.out.println("The field must be more than 0");
+    private static long getLength(LineReader scan) {
+        OutputSink.prompt("Enter a movie length ");
+        OutputSink.prompt("The field must be more than 0");
         Long length = Long.valueOf(scan.nextLine().trim());
         validateMovieParams(length > 0);
 
@@ -163,9 +226,9 @@ public class MovieUtil {
      * @param scan
      * @return movie mpaa rating
      */
-    private static MpaaRating getMpaaRating(Scanner scan) {
-        System.out.println("Enter a movie MpaaRating(" + UNITS + ", null):");
-        System.out.println("The field can be empty. To enter NULL, use an empty line and Enter");
+    private static MpaaRating getMpaaRating(LineReader scan) {
+        OutputSink.prompt("Enter a movie MpaaRating(" + UNITS + ", null):");
+        OutputSink.prompt("The field can be empty. To enter NULL, use an empty line and Enter");
         String mpaaRating = scan.nextLine().trim();
         validateMovieParams(true);
 
@@ -178,9 +241,9 @@ public class MovieUtil {
      * @param movie
      * @return screenwriter
      */
-    private static Person getScreenwriter(Scanner scan, Movie movie) {
-        System.out.println("Movie screenwriter");
-        System.out.println("The field can be empty. To enter NULL, use an empty line and Enter");
+    private static Person getScreenwriter(LineReader scan, Movie movie) {
+        OutputSink.prompt("Movie screenwriter");
+        OutputSink.prompt("The field can be empty. To enter NULL, use an empty line and Enter");
 
         return movie != null ? PersonUtil.updatePerson(scan, movie.getScreenwriter())
                 : PersonUtil.createPerson(scan);
@@ -0,0 +1,746 @@
+package utils;
+
+import model.Coordinates;
+import model.Movie;
+import model.MpaaRating;
+import model.Person;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Movies kept outside the Java heap (off-heap mode of MovieStorage).
+ * Every field is a column in direct memory, a movie is a row of the columns;
+ * names are UTF-8 bytes in an off-heap arena, screenwriters are the few shared
+ * Person objects referenced by number. The heap keeps only primitive arrays
+ * (the id index and the order of rows), which the GC does not scan, so the
+ * GC work does not grow with the collection. Movie objects are decoded on access.
+ * Not thread-safe: MovieStorage calls it under its lock
+ */
+class OffHeapMovieStore {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int DEFAULT_ARENA_SIZE = 1 << 16;
+    private static final byte NO_RATING = -1;
+    private static final int NO_SCREENWRITER = -1;
+    private static final MpaaRating[] RATINGS = MpaaRating.values();
+
+    private final Column ids = new Column(Integer.BYTES);
+    private final Column oscarsCounts = new Column(Integer.BYTES);
+    private final Column goldenPalmCounts = new Column(Integer.BYTES);
+    private final Column lengths = new Column(Long.BYTES);
+    private final Column creationDays = new Column(Integer.BYTES);
+    private final Column ratings = new Column(Byte.BYTES);
+    private final Column xs = new Column(Integer.BYTES);
+    private final Column ys = new Column(Long.BYTES);
+    private final Column nameOffsets = new Column(Integer.BYTES);
+    private final Column nameLengths = new Column(Integer.BYTES);
+    private final Column screenwriters = new Column(Integer.BYTES);
+    private final Column[] columns = {ids, oscarsCounts, goldenPalmCounts, lengths, creationDays, ratings,
+            xs, ys, nameOffsets, nameLengths, screenwriters};
+    private int capacity = 0;
+
+    /**
+     * rows after rowLimit were never used, free rows below it are reused
+     */
+    private int rowLimit = 0;
+    private int[] freeRows = new int[DEFAULT_CAPACITY];
+    private int freeRowCount = 0;
+
+    private ByteBuffer arena = ByteBuffer.allocateDirect(DEFAULT_ARENA_SIZE);
+    private int arenaUsed = 0;
+    /**
+     * bytes of removed names, the arena is compacted when they are the most of it
+     */
+    private int arenaGarbage = 0;
+
+    private final List<Person> persons = new ArrayList<>();
+    private final IdentityHashMap<Person, Integer> personNumbers = new IdentityHashMap<>();
+    private final ArrayDeque<Integer> freePersonNumbers = new ArrayDeque<>();
+    private int[] personCounts = new int[16];
+    private int noScreenwriterCount = 0;
+
+    /**
+     * slot 0 for null and ordinal + 1 for the others
+     */
+    private final int[] ratingCounts = new int[RATINGS.length + 1];
+    private final RowIndex rowsById = new RowIndex();
+    /**
+     * rows grouped by oscars count, ordered by id within a group (see MovieStorage.orderKey)
+     */
+    private final TreeMap<Integer, RowList> order = new TreeMap<>();
+    /**
+     * read by MovieStorage.size without the lock
+     */
+    private volatile int size = 0;
+
+    OffHeapMovieStore() {
+        grow(DEFAULT_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int id) {
+        return rowsById.get(id) >= 0;
+    }
+
+    /**
+     * @param id
+     * @return decoded movie or null if there is no such id
+     */
+    Movie get(int id) {
+        int row = rowsById.get(id);
+        return row < 0 ? null : decode(row);
+    }
+
+    /**
+     * add movie or replace the movie with the same id
+     * @param movie
+     */
+    void put(Movie movie) {
+        remove(movie.getId());
+        int row = allocateRow();
+        ids.putInt(row, movie.getId());
+        oscarsCounts.putInt(row, movie.getOscarsCount());
+        goldenPalmCounts.putInt(row, movie.getGoldenPalmCount());
+        lengths.putLong(row, movie.getLength());
+        creationDays.putInt(row, (int) movie.getCreationEpochDay());
+        MpaaRating rating = movie.getMpaaRating();
+        ratings.putByte(row, rating == null ? NO_RATING : (byte) rating.ordinal());
+        xs.putInt(row, movie.getCoordinateX());
+        ys.putLong(row, movie.getCoordinateY());
+        putName(row, movie.getName());
+        screenwriters.putInt(row, addScreenwriter(movie.getScreenwriter()));
+
+        ratingCounts[ratings.getByte(row) + 1]++;
+        rowsById.put(movie.getId(), row);
+        order.computeIfAbsent(movie.getOscarsCount(), oscarsCount -> new RowList()).insert(row);
+        size++;
+    }
+
+    /**
+     * @param id
+     * @return true if the movie was removed
+     */
+    boolean remove(int id) {
+        int row = rowsById.remove(id);
+        if (row < 0) {
+            return false;
+        }
+        RowList rows = order.get(oscarsCounts.getInt(row));
+        rows.remove(row);
+        if (rows.size == 0) {
+            order.remove(oscarsCounts.getInt(row));
+        }
+        freeRow(row);
+        return true;
+    }
+
+    /**
+     * remove movies with greater oscars count
+     * @param oscarsCount
+     */
+    void removeGreater(int oscarsCount) {
+        removeGroups(order.tailMap(oscarsCount, false));
+    }
+
+    /**
+     * remove movies with lower oscars count
+     * @param oscarsCount
+     */
+    void removeLower(int oscarsCount) {
+        removeGroups(order.headMap(oscarsCount, false));
+    }
+
+    private void removeGroups(NavigableMap<Integer, RowList> groups) {
+        for (RowList rows : groups.values()) {
+            for (int i = 0; i < rows.size; i++) {
+                rowsById.remove(ids.getInt(rows.rows[i]));
+                freeRow(rows.rows[i]);
+            }
+        }
+        groups.clear();
+    }
+
+    void clear() {
+        order.clear();
+        rowsById.clear();
+        rowLimit = 0;
+        freeRowCount = 0;
+        arenaUsed = 0;
+        arenaGarbage = 0;
+        persons.clear();
+        personNumbers.clear();
+        freePersonNumbers.clear();
+        Arrays.fill(personCounts, 0);
+        noScreenwriterCount = 0;
+        Arrays.fill(ratingCounts, 0);
+        size = 0;
+    }
+
+    /**
+     * @param rating rating or null for movies without rating
+     * @return count
+     */
+    int countByMpaaRating(MpaaRating rating) {
+        return ratingCounts[rating != null ? rating.ordinal() + 1 : 0];
+    }
+
+    /**
+     * @param name screenwriter name or null for movies without screenwriter
+     * @return count
+     */
+    int countByScreenwriter(String name) {
+        if (name == null) {
+            return noScreenwriterCount;
+        }
+        int count = 0;
+        for (int i = 0; i < persons.size(); i++) {
+            if (persons.get(i) != null && persons.get(i).getName().equals(name)) {
+                count += personCounts[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param rating rating or null for movies without rating
+     * @return movies in storage order
+     */
+    List<Movie> filterByMpaaRating(MpaaRating rating) {
+        byte ordinal = rating == null ? NO_RATING : (byte) rating.ordinal();
+        List<Movie> movies = new ArrayList<>();
+        for (RowList rows : order.values()) {
+            for (int i = 0; i < rows.size; i++) {
+                if (ratings.getByte(rows.rows[i]) == ordinal) {
+                    movies.add(decode(rows.rows[i]));
+                }
+            }
+        }
+        return movies;
+    }
+
+    /**
+     * @param name screenwriter name or null for movies without screenwriter
+     * @return movies in storage order
+     */
+    List<Movie> filterByScreenwriter(String name) {
+        List<Movie> movies = new ArrayList<>();
+        for (RowList rows : order.values()) {
+            for (int i = 0; i < rows.size; i++) {
+                int screenwriter = screenwriters.getInt(rows.rows[i]);
+                if (name == null ? screenwriter == NO_SCREENWRITER
+                        : screenwriter != NO_SCREENWRITER && persons.get(screenwriter).getName().equals(name)) {
+                    movies.add(decode(rows.rows[i]));
+                }
+            }
+        }
+        return movies;
+    }
+
+    /**
+     * @param max true for the latest date
+     * @return movie with the extreme date (the lowest id among equal dates) or null for empty store
+     */
+    Movie getExtremeCreationDate(boolean max) {
+        int extremeRow = -1;
+        for (int row = 0; row < rowLimit; row++) {
+            if (ids.getInt(row) == 0) {
+                continue;
+            }
+            if (extremeRow < 0) {
+                extremeRow = row;
+                continue;
+            }
+            int day = creationDays.getInt(row);
+            int extremeDay = creationDays.getInt(extremeRow);
+            if ((max ? day > extremeDay : day < extremeDay)
+                    || (day == extremeDay && ids.getInt(row) < ids.getInt(extremeRow))) {
+                extremeRow = row;
+            }
+        }
+        return extremeRow < 0 ? null : decode(extremeRow);
+    }
+
+    /**
+     * @param fromDay first epoch day (inclusive)
+     * @param toDay last epoch day (inclusive)
+     * @return movies ordered by creation date and id
+     */
+    List<Movie> filterByCreationDate(long fromDay, long toDay) {
+        List<Movie> movies = new ArrayList<>();
+        for (int row = 0; row < rowLimit; row++) {
+            int day = creationDays.getInt(row);
+            if (ids.getInt(row) != 0 && day >= fromDay && day <= toDay) {
+                movies.add(decode(row));
+            }
+        }
+        movies.sort(Comparator.comparing(Movie::getCreationDate).thenComparingInt(Movie::getId));
+        return movies;
+    }
+
+    /**
+     * @param position number of the movie in storage order
+     * @return storage key of the movie or -1 if there is no such position
+     */
+    long keyAt(int position) {
+        for (Map.Entry<Integer, RowList> entry : order.entrySet()) {
+            RowList rows = entry.getValue();
+            if (position < rows.size) {
+                return MovieStorage.orderKey(entry.getKey(), ids.getInt(rows.rows[position]));
+            }
+            position -= rows.size;
+        }
+        return -1;
+    }
+
+    /**
+     * decodes the next movies in storage order
+     * @param afterKey storage key of the last movie seen, Long.MIN_VALUE from the start
+     * @param limit max number of movies
+     * @return movies with greater storage keys
+     */
+    List<Movie> page(long afterKey, int limit) {
+        List<Movie> movies = new ArrayList<>(limit);
+        int afterOscarsCount = (int) (afterKey >> 32);
+        int afterId = (int) afterKey;
+        for (Map.Entry<Integer, RowList> entry : order.tailMap(afterOscarsCount, true).entrySet()) {
+            RowList rows = entry.getValue();
+            int i = entry.getKey() == afterOscarsCount && afterKey != Long.MIN_VALUE ? rows.indexAfter(afterId) : 0;
+            for (; i < rows.size; i++) {
+                if (movies.size() == limit) {
+                    return movies;
+                }
+                movies.add(decode(rows.rows[i]));
+            }
+        }
+        return movies;
+    }
+
+    /**
+     * copies the movies in storage order to a new store (only the direct memory is copied),
+     * the copy is not changed afterwards and is read without the lock
+     * @return movies of the copy decoded on access
+     */
+    List<Movie> copy() {
+        OffHeapMovieStore copy = new OffHeapMovieStore();
+        copy.grow(Math.max(DEFAULT_CAPACITY, size));
+        copy.arena = ByteBuffer.allocateDirect(Math.max(DEFAULT_ARENA_SIZE, arenaUsed - arenaGarbage));
+        copy.persons.addAll(persons);
+        int target = 0;
+        for (RowList rows : order.values()) {
+            for (int i = 0; i < rows.size; i++, target++) {
+                int row = rows.rows[i];
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c].copyRow(row, copy.columns[c], target);
+                }
+                copy.copyName(target, this, row);
+            }
+        }
+        copy.rowLimit = target;
+        copy.size = target;
+        return new AbstractList<Movie>() {
+            @Override
+            public Movie get(int index) {
+                Objects.checkIndex(index, copy.size);
+                return copy.decode(index);
+            }
+
+            @Override
+            public int size() {
+                return copy.size;
+            }
+        };
+    }
+
+    /**
+     * copies a numeric column to the heap for aggregate queries
+     * @param version version of the collection (see MovieStorage.getVersion)
+     * @param field
+     * @return values in row order with the rating slots
+     */
+    Aggregates.Column readColumn(long version, Aggregates.Field field) {
+        Column source;
+        switch (field) {
+            case OSCARS_COUNT:
+                source = oscarsCounts;
+                break;
+            case GOLDEN_PALM_COUNT:
+                source = goldenPalmCounts;
+                break;
+            case LENGTH:
+                source = lengths;
+                break;
+            case X:
+                source = xs;
+                break;
+            default:
+                source = ys;
+        }
+        boolean isLong = source.width == Long.BYTES;
+        long[] values = new long[size];
+        byte[] ratingSlots = new byte[size];
+        int count = 0;
+        for (int row = 0; row < rowLimit; row++) {
+            if (ids.getInt(row) != 0) {
+                values[count] = isLong ? source.getLong(row) : source.getInt(row);
+                ratingSlots[count] = (byte) (ratings.getByte(row) + 1);
+                count++;
+            }
+        }
+        return new Aggregates.Column(version, values, ratingSlots);
+    }
+
+    /**
+     * @return direct memory taken by the columns and the arena
+     */
+    long offHeapBytes() {
+        long bytes = arena.capacity();
+        for (Column column : columns) {
+            bytes += column.buffer.capacity();
+        }
+        return bytes;
+    }
+
+    private Movie decode(int row) {
+        int screenwriter = screenwriters.getInt(row);
+        byte rating = ratings.getByte(row);
+        return new Movie(ids.getInt(row),
+                getName(row),
+                new Coordinates(xs.getInt(row), ys.getLong(row)),
+                LocalDate.ofEpochDay(creationDays.getInt(row)),
+                oscarsCounts.getInt(row),
+                goldenPalmCounts.getInt(row),
+                lengths.getLong(row),
+                rating == NO_RATING ? null : RATINGS[rating],
+                screenwriter == NO_SCREENWRITER ? null : persons.get(screenwriter));
+    }
+
+    private int allocateRow() {
+        if (freeRowCount > 0) {
+            return freeRows[--freeRowCount];
+        }
+        if (rowLimit == capacity) {
+            grow(capacity << 1);
+        }
+        return rowLimit++;
+    }
+
+    private void freeRow(int row) {
+        ratingCounts[ratings.getByte(row) + 1]--;
+        removeScreenwriter(screenwriters.getInt(row));
+        arenaGarbage += nameLengths.getInt(row);
+        ids.putInt(row, 0);
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRows.length << 1);
+        }
+        freeRows[freeRowCount++] = row;
+        size--;
+    }
+
+    private void grow(int newCapacity) {
+        if (newCapacity <= 0) {
+            throw new IllegalStateException("Off-heap storage is full");
+        }
+        for (Column column : columns) {
+            column.grow(newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    private String getName(int row) {
+        byte[] bytes = new byte[nameLengths.getInt(row)];
+        arena.get(nameOffsets.getInt(row), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void putName(int row, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        reserveArena(bytes.length);
+        arena.put(arenaUsed, bytes);
+        nameOffsets.putInt(row, arenaUsed);
+        nameLengths.putInt(row, bytes.length);
+        arenaUsed += bytes.length;
+    }
+
+    private void copyName(int row, OffHeapMovieStore source, int sourceRow) {
+        int length = source.nameLengths.getInt(sourceRow);
+        arena.put(arenaUsed, source.arena, source.nameOffsets.getInt(sourceRow), length);
+        nameOffsets.putInt(row, arenaUsed);
+        nameLengths.putInt(row, length);
+        arenaUsed += length;
+    }
+
+    /**
+     * makes room for a name: drops removed names if they take the most of the arena,
+     * otherwise doubles the arena
+     */
+    private void reserveArena(int length) {
+        if (arenaUsed + length <= arena.capacity()) {
+            return;
+        }
+        long live = arenaUsed - arenaGarbage;
+        long newSize = arenaGarbage > live ? arena.capacity() : (long) arena.capacity() << 1;
+        while (newSize < live + length) {
+            newSize <<= 1;
+        }
+        if (newSize > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap name arena is full");
+        }
+        ByteBuffer old = arena;
+        int oldUsed = arenaUsed;
+        arena = ByteBuffer.allocateDirect((int) Math.max(DEFAULT_ARENA_SIZE, newSize));
+        arenaUsed = 0;
+        arenaGarbage = 0;
+        if (live == oldUsed) {
+            arena.put(0, old, 0, oldUsed);
+            arenaUsed = oldUsed;
+            return;
+        }
+        for (int row = 0; row < rowLimit; row++) {
+            if (ids.getInt(row) != 0) {
+                int nameLength = nameLengths.getInt(row);
+                arena.put(arenaUsed, old, nameOffsets.getInt(row), nameLength);
+                nameOffsets.putInt(row, arenaUsed);
+                arenaUsed += nameLength;
+            }
+        }
+    }
+
+    /**
+     * @param screenwriter
+     * @return number of the shared person or NO_SCREENWRITER
+     */
+    private int addScreenwriter(Person screenwriter) {
+        if (screenwriter == null) {
+            noScreenwriterCount++;
+            return NO_SCREENWRITER;
+        }
+        Person shared = UniqueValuesUtil.internPerson(screenwriter);
+        Integer number = personNumbers.get(shared);
+        if (number == null) {
+            number = freePersonNumbers.isEmpty() ? persons.size() : freePersonNumbers.pop();
+            if (number == persons.size()) {
+                persons.add(shared);
+            } else {
+                persons.set(number, shared);
+            }
+            personNumbers.put(shared, number);
+            if (number == personCounts.length) {
+                personCounts = Arrays.copyOf(personCounts, personCounts.length << 1);
+            }
+        }
+        personCounts[number]++;
+        return number;
+    }
+
+    /**
+     * the person is dropped with the last movie of it
+     */
+    private void removeScreenwriter(int number) {
+        if (number == NO_SCREENWRITER) {
+            noScreenwriterCount--;
+            return;
+        }
+        if (--personCounts[number] == 0) {
+            Person person = persons.get(number);
+            personNumbers.remove(person);
+            persons.set(number, null);
+            freePersonNumbers.push(number);
+            if (countByScreenwriter(person.getName()) == 0) {
+                UniqueValuesUtil.removePerson(person);
+            }
+        }
+    }
+
+    /**
+     * one field of all rows in direct memory
+     */
+    private static class Column {
+        private final int width;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+
+        Column(int width) {
+            this.width = width;
+        }
+
+        void grow(int newCapacity) {
+            long bytes = (long) newCapacity * width;
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Off-heap storage is full");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+            grown.put(0, buffer, 0, buffer.capacity());
+            buffer = grown;
+        }
+
+        void copyRow(int row, Column target, int targetRow) {
+            target.buffer.put(targetRow * width, buffer, row * width, width);
+        }
+
+        int getInt(int row) {
+            return buffer.getInt(row * Integer.BYTES);
+        }
+
+        void putInt(int row, int value) {
+            buffer.putInt(row * Integer.BYTES, value);
+        }
+
+        long getLong(int row) {
+            return buffer.getLong(row * Long.BYTES);
+        }
+
+        void putLong(int row, long value) {
+            buffer.putLong(row * Long.BYTES, value);
+        }
+
+        byte getByte(int row) {
+            return buffer.get(row);
+        }
+
+        void putByte(int row, byte value) {
+            buffer.put(row, value);
+        }
+    }
+
+    /**
+     * rows of one oscars count ordered by id
+     */
+    private class RowList {
+        private int[] rows = new int[4];
+        private int size = 0;
+
+        void insert(int row) {
+            int id = ids.getInt(row);
+            int index = size == 0 || ids.getInt(rows[size - 1]) < id ? size : indexAfter(id);
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, rows.length << 1);
+            }
+            System.arraycopy(rows, index, rows, index + 1, size - index);
+            rows[index] = row;
+            size++;
+        }
+
+        void remove(int row) {
+            int index = indexAfter(ids.getInt(row) - 1);
+            System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+            size--;
+        }
+
+        /**
+         * @return index of the first row with a greater id
+         */
+        int indexAfter(int id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ids.getInt(rows[middle]) <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * id to row, open addressing like MovieIdIndex (id 0 marks a free slot)
+     */
+    private static class RowIndex {
+        private int[] keys = new int[DEFAULT_CAPACITY];
+        private int[] rows = new int[DEFAULT_CAPACITY];
+        private int count = 0;
+        private int mask = DEFAULT_CAPACITY - 1;
+
+        int get(int id) {
+            int slot = find(id);
+            return slot < 0 ? -1 : rows[slot];
+        }
+
+        void put(int id, int row) {
+            int slot = hash(id) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == id) {
+                    rows[slot] = row;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            rows[slot] = row;
+            if (++count > (keys.length >> 1) + (keys.length >> 2)) {
+                resize(keys.length << 1);
+            }
+        }
+
+        /**
+         * @return removed row or -1 if there is no such id
+         */
+        int remove(int id) {
+            int slot = find(id);
+            if (slot < 0) {
+                return -1;
+            }
+            int removed = rows[slot];
+            count--;
+            int free = slot;
+            int cur = (slot + 1) & mask;
+            while (keys[cur] != 0) {
+                int home = hash(keys[cur]) & mask;
+                if (((cur - home) & mask) >= ((cur - free) & mask)) {
+                    keys[free] = keys[cur];
+                    rows[free] = rows[cur];
+                    free = cur;
+                }
+                cur = (cur + 1) & mask;
+            }
+            keys[free] = 0;
+            return removed;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            count = 0;
+        }
+
+        private int find(int id) {
+            int slot = hash(id) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == id) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldRows = rows;
+            keys = new int[capacity];
+            rows = new int[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    rows[slot] = oldRows[i];
+                }
+            }
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package utils;
+
+import model.Movie;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Buffered output of the commands.
+ * Commands render their results into one reusable buffer, which is passed
+ * to System.out in big blocks and at the end of every command
+ * (System.out is synchronized and flushes on every line).
+ * Every thread has its own buffer and target, so the commands of network clients
+ * (see Server) run at the same time and their output goes to their connections
+ */
+public class OutputSink {
+    private static final int FLUSH_SIZE = 1 << 16;
+    private static final ThreadLocal<Sink> SINK = ThreadLocal.withInitial(Sink::new);
+
+    /**
+     * output state of a thread
+     */
+    private static class Sink {
+        private final StringBuilder buffer = new StringBuilder(2 * FLUSH_SIZE);
+        /**
+         * null for System.out
+         */
+        private Appendable target = null;
+        private boolean isPromptEnabled = true;
+    }
+
+    /**
+     * prints a request for input right away
+     * @param text request text
+     */
+    public static void prompt(String text) {
+        if (!SINK.get().isPromptEnabled) {
+            return;
+        }
+        println(text);
+        flush();
+    }
+
+    /**
+     * switches requests for input on and off (batch mode has nobody to ask)
+     * @param isPromptEnabled false to drop the requests
+     * @return previous state
+     */
+    public static boolean setPromptEnabled(boolean isPromptEnabled) {
+        Sink sink = SINK.get();
+        boolean wasEnabled = sink.isPromptEnabled;
+        sink.isPromptEnabled = isPromptEnabled;
+        return wasEnabled;
+    }
+
+    /**
+     * sends the output of the current thread to another target,
+     * the buffered output is flushed to the previous one
+     * @param target output target, null for System.out
+     */
+    public static void setTarget(Appendable target) {
+        flush();
+        SINK.get().target = target;
+    }
+
+    public static void print(String text) {
+        Sink sink = SINK.get();
+        sink.buffer.append(text);
+        flushIfFull(sink);
+    }
+
+    public static void println(Object value) {
+        Sink sink = SINK.get();
+        sink.buffer.append(value).append('\n');
+        flushIfFull(sink);
+    }
+
+    public static void println() {
+        Sink sink = SINK.get();
+        sink.buffer.append('\n');
+        flushIfFull(sink);
+    }
+
+    /**
+     * renders a movie the same way as println(Object) does
+     * @param movie movie or null
+     */
+    public static void println(Movie movie) {
+        Sink sink = SINK.get();
+        if (movie == null) {
+            sink.buffer.append("null");
+        } else {
+            movie.appendTo(sink.buffer);
+        }
+        sink.buffer.append('\n');
+        flushIfFull(sink);
+    }
+
+    /**
+     * renders a movie with its screenwriter (the show command format)
+     * @param movie
+     */
+    public static void printWithScreenwriter(Movie movie) {
+        Sink sink = SINK.get();
+        movie.appendTo(sink.buffer).append('\n');
+        if (movie.getScreenwriter() != null) {
+            movie.getScreenwriter().appendTo(sink.buffer);
+        }
+        sink.buffer.append('\n');
+        flushIfFull(sink);
+    }
+
+    /**
+     * passes the buffered output of the current thread to its target
+     * @throws UncheckedIOException writing error of the target
+     */
+    public static void flush() {
+        flush(SINK.get());
+    }
+
+    private static void flush(Sink sink) {
+        StringBuilder buffer = sink.buffer;
+        if (buffer.length() == 0) {
+            return;
+        }
+        try {
+            if (sink.target != null) {
+                sink.target.append(buffer);
+            } else {
+                PrintStream out = System.out;
+                out.append(buffer);
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.setLength(0);
+            if (buffer.capacity() > 4 * FLUSH_SIZE) {
+                buffer.trimToSize();
+                buffer.ensureCapacity(2 * FLUSH_SIZE);
+            }
+        }
+    }
+
+    private static void flushIfFull(Sink sink) {
+        if (sink.buffer.length() >= FLUSH_SIZE) {
+            flush(sink);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package utils;
+
+import model.Movie;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.validation.Schema;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads the movies file on several cores.
+ * The file is memory-mapped and split on movie start tags, every chunk is
+ * wrapped into its own movies element and parsed (and validated) separately
+ * on a fork-join pool. The part of the file outside the chunks (xml declaration,
+ * root start and end tags) is validated as an empty document.
+ * Note: a movie start tag inside a comment or CDATA would break the split
+ */
+class ParallelXmlLoader {
+    private static final byte[] MOVIE_TAG = "<movie>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MOVIES_END_TAG = "</movies>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ROOT_START = "<movies>".getBytes(StandardCharsets.US_ASCII);
+    private static final int WINDOW_SIZE = 1 << 16;
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * smaller files are not worth splitting
+     */
+    static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final Schema schema;
+
+    private ParallelXmlLoader(FileChannel channel, Schema schema) {
+        this.channel = channel;
+        this.schema = schema;
+    }
+
+    /**
+     * parse the file on the common fork-join pool
+     * @param path xml file
+     * @param schema scheme for validation, null to skip validation
+     * @return movies in file order
+     * @throws IOException reading error
+     * @throws XMLStreamException structure error in any chunk
+     */
+    static List<Movie> load(Path path, Schema schema) throws IOException, XMLStreamException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ParallelXmlLoader(channel, schema).load();
+        }
+    }
+
+    private List<Movie> load() throws IOException, XMLStreamException {
+        long size = channel.size();
+        long first = find(0, MOVIE_TAG);
+        long last = findLast(MOVIES_END_TAG);
+        if (first < 0 || last < first) {
+            return parseSkeleton(size, size);
+        }
+
+        int chunkCount = (int) Math.max((last - first) / MAX_CHUNK_SIZE + 1,
+                Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, (last - first) / MIN_CHUNK_SIZE));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(first);
+        for (int i = 1; i < chunkCount; i++) {
+            long start = find(first + (last - first) * i / chunkCount, MOVIE_TAG);
+            if (start > bounds.get(bounds.size() - 1) && start < last) {
+                bounds.add(start);
+            }
+        }
+        bounds.add(last);
+
+        parseSkeleton(first, last);
+        try {
+            return ForkJoinPool.commonPool().invoke(new ChunkTask(bounds, 0, bounds.size() - 1));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (ChunkException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * parses chunks [from, to) of the bounds list, splitting the range in halves
+     * (never serialized)
+     */
+    @SuppressWarnings("serial")
+    private class ChunkTask extends RecursiveTask<List<Movie>> {
+        private final List<Long> bounds;
+        private final int from;
+        private final int to;
+
+        ChunkTask(List<Long> bounds, int from, int to) {
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Movie> compute() {
+            if (to - from == 1) {
+                try {
+                    return parseChunk(bounds.get(from), bounds.get(to));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (XMLStreamException e) {
+                    throw new ChunkException(e);
+                }
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask right = new ChunkTask(bounds, middle, to);
+            right.fork();
+            List<Movie> movies = new ChunkTask(bounds, from, middle).compute();
+            movies.addAll(right.join());
+            return movies;
+        }
+    }
+
+    /**
+     * carries a structure error out of a fork-join task (never serialized)
+     */
+    @SuppressWarnings("serial")
+    private static class ChunkException extends RuntimeException {
+        ChunkException(XMLStreamException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized XMLStreamException getCause() {
+            return (XMLStreamException) super.getCause();
+        }
+    }
+
+    private List<Movie> parseChunk(long start, long end) throws IOException, XMLStreamException {
+        InputStream stream = new SequenceInputStream(new ByteArrayInputStream(ROOT_START),
+                new SequenceInputStream(new ByteBufferInputStream(map(start, end)),
+                        new ByteArrayInputStream(MOVIES_END_TAG)));
+        return parse(stream);
+    }
+
+    /**
+     * validates everything outside the movie chunks as a document without movies
+     */
+    private List<Movie> parseSkeleton(long headEnd, long tailStart) throws IOException, XMLStreamException {
+        InputStream stream = new SequenceInputStream(new ByteBufferInputStream(map(0, headEnd)),
+                new ByteBufferInputStream(map(tailStart, channel.size())));
+        return parse(stream);
+    }
+
+    private List<Movie> parse(InputStream stream) throws XMLStreamException {
+        List<Movie> movies = new ArrayList<>();
+        XMLStreamReader xsr = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+        if (schema != null) {
+            xsr = new ValidatingStreamReader(xsr, schema);
+        }
+        FileAccessor.readMovies(xsr, movies);
+        xsr.close();
+        return movies;
+    }
+
+    private MappedByteBuffer map(long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    /**
+     * position of the first pattern occurrence at or after the offset
+     * @return position or -1
+     */
+    private long find(long offset, byte[] pattern) throws IOException {
+        long size = channel.size();
+        for (long start = offset; start < size; start += WINDOW_SIZE) {
+            long end = Math.min(size, start + WINDOW_SIZE + pattern.length - 1);
+            ByteBuffer window = map(start, end);
+            for (int i = 0; i + pattern.length <= window.limit(); i++) {
+                if (matches(window, i, pattern)) {
+                    return start + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * position of the last pattern occurrence
+     * @return position or -1
+     */
+    private long findLast(byte[] pattern) throws IOException {
+        long size = channel.size();
+        for (long end = size; end > 0; end -= WINDOW_SIZE) {
+            long start = Math.max(0, end - WINDOW_SIZE);
+            ByteBuffer window = map(start, Math.min(size, end + pattern.length - 1));
+            for (int i = window.limit() - pattern.length; i >= 0; i--) {
+                if (matches(window, i, pattern)) {
+                    return start + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int position, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (buffer.get(position + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * reads a mapped region without copying it to the heap
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
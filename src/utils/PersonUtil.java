@@ -5,7 +5,6 @@ import model.Country;
 import model.Person;
 
 import java.util.Arrays;
-import java.util.Scanner;
 import java.util.stream.Collectors;
 
 /**
@@ -31,7 +30,7 @@ public class PersonUtil {
      * @param scan provides params of a Person
      * @return crated Person
      */
-    public static Person createPerson(Scanner scan) {
+    public static Person createPerson(LineReader scan) {
         PersonBuilder pb = readPerson(scan);
         if (pb == null) {
             return null;
@@ -44,31 +43,21 @@ public class PersonUtil {
     }
 
     /**
-     * updating person
+     * updating person: a new person is created,
+     * the old one may be shared by other movies (see UniqueValuesUtil.internPerson)
      * @param scan
      * @param person
      * @return person
      */
-    public static Person updatePerson(Scanner scan, Person person) {
-        PersonBuilder pb = readPerson(scan);
-        if (pb == null) {
-            UniqueValuesUtil.removePerson(person);
-            return null;
-        }
-        UniqueValuesUtil.updatePerson(person, pb.name);
-        person.update(pb.name,
-                pb.weight,
-                pb.eyeColor,
-                pb.hairColor,
-                pb.nationality);
-        return person;
+    public static Person updatePerson(LineReader scan, Person person) {
+        return createPerson(scan);
     }
 
     /**
      * simplifies person creating
      * @param scan
      */
-    public static PersonBuilder readPerson(Scanner scan) {
+    public static PersonBuilder readPerson(LineReader scan) {
         if(!aimValidation(scan)) {
             return null;
         }
@@ -93,8 +82,10 @@ public class PersonUtil {
                     counter++;
                     if (!((maxError - counter) >= 0)) {
                         System.out.println("\nooops... something went wrong.");
-                        FileAccessor.writeXmlFile();
-                        System.out.println("Collection saved.");
+                        Autosave.stop();
+                        if (FileAccessor.save()) {
+                            System.out.println("Collection saved.");
+                        }
                         System.out.println("The program terminated.");
                         System.exit(0);
                     }
@@ -109,8 +100,8 @@ public class PersonUtil {
      * @param scan provides answer
      * @return true if person is needed
      */
-    private static boolean aimValidation(Scanner scan) {
-        System.out.println("Add a person \n['Y' to accept / Any symbol for cancellation] ");
+    private static boolean aimValidation(LineReader scan) {
+        OutputSink.prompt("Add a person \n['Y' to accept / Any symbol for cancellation] ");
         String answer = scan.nextLine().trim();
 
         return answer.equals("Y");
@@ -121,9 +112,9 @@ public class PersonUtil {
      * @param scan
      * @return person's name
      */
-    private static String getName(Scanner scan) {
-        System.out.println("Enter a person name: ");
-        System.out.println("The field cannot be empty.");
+    private static String getName(LineReader scan) {
+        OutputSink.prompt("Enter a person name: ");
+        OutputSink.prompt("The field cannot be empty.");
         String name = scan.nextLine().trim();
         validatePersonParams(name != null && !name.isEmpty());
 
@@ -135,9 +126,9 @@ public class PersonUtil {
      * @param scan
      * @return person's weight
      */
-    private static Integer getWeight(Scanner scan) {
-        System.out.println("Enter a person weight: ");
-        System.out.println("The field must be more than 0");
+    private static Integer getWeight(LineReader scan) {
+        OutputSink.prompt("Enter a person weight: ");
+        OutputSink.prompt("The field must be more than 0");
         Integer weight = Integer.valueOf(scan.nextLine().trim());
         validatePersonParams(weight == null || weight > 0);
 
@@ -149,9 +140,9 @@ public class PersonUtil {
      * @param scan
      * @return person's eye color
      */
-    private static Color getEyeColor(Scanner scan) {
-        System.out.println("Enter a person eye color: " + PERSON_COLOR);
-        System.out.println("The field cannot be empty.");
+    private static Color getEyeColor(LineReader scan) {
+        OutputSink.prompt("Enter a person eye color: " + PERSON_COLOR);
+        OutputSink.prompt("The field cannot be empty.");
         String eyeColorStr = scan.nextLine().trim();
         validatePersonParams(!eyeColorStr.equals(null));
 
@@ -163,9 +154,9 @@ public class PersonUtil {
      * @param scan
      * @return person's hair color
      */
-    private static Color getHairColor(Scanner scan) {
-        System.out.println("Enter a person hair color: " + PERSON_COLOR);
-        System.out.println("The field cannot be empty.");
+    private static Color getHairColor(LineReader scan) {
+        OutputSink.prompt("Enter a person hair color: " + PERSON_COLOR);
+        OutputSink.prompt("The field cannot be empty.");
         String hairColorStr = scan.nextLine().trim();
         validatePersonParams(!hairColorStr.equals(null));
 
@@ -177,9 +168,9 @@ public class PersonUtil {
      * @param scan
      * @return person's nationality
      */
-    private static Country getNationality(Scanner scan) {
-        System.out.println("Enter a person nationality: " + PERSON_COUNTRIES);
-        System.out.println("The field can be empty. To enter NULL, use an empty line and Enter");
+    private static Country getNationality(LineReader scan) {
+        OutputSink.prompt("Enter a person nationality: " + PERSON_COUNTRIES);
+        OutputSink.prompt("The field can be empty. To enter NULL, use an empty line and Enter");
         String nationality = scan.nextLine().trim();
 
         return nationality.isEmpty() ? null : Country.valueOf(nationality);
@@ -0,0 +1,432 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server mode: the commands of CommandExecutor for many clients over TCP (localhost only).
+ * One selector thread accepts the connections, reads the requests without blocking
+ * and splits them into lines. The commands run on a pool of workers against the shared
+ * MovieStorage; the lines of one client run one by one in their order.
+ * The output of a command is collected in the buffer of the worker (see OutputSink)
+ * and sent by the selector thread when the connection is ready.
+ * Protocol: one command per line in UTF-8, elements are given as one-line literals
+ * (see MovieUtil.LITERAL_FORMAT); the response to every line (and the greeting)
+ * ends with a line of a single dot (RESPONSE_END). exit closes the connection
+ */
+public class Server implements Closeable {
+    public static final String RESPONSE_END = ".";
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_LINE_LENGTH = 1 << 20;
+    /**
+     * reading of a client is paused while so many of its lines wait for execution
+     */
+    private static final int MAX_QUEUED_LINES = 1024;
+    /**
+     * a worker waits while so many bytes of the output of its client are not sent
+     */
+    private static final long MAX_PENDING_OUTPUT = 1 << 22;
+    /**
+     * buffers passed to one gathering write
+     */
+    private static final int MAX_WRITE_BUFFERS = 64;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final Thread selectorThread;
+    /**
+     * clients whose interest ops must be changed by the selector thread
+     */
+    private final Queue<Client> changedClients = new ConcurrentLinkedQueue<>();
+    private volatile boolean isRunning = true;
+
+    private Server(int port, int workerCount) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        AtomicInteger workerNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, task -> {
+            Thread thread = new Thread(task, "worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        selectorThread = new Thread(this::run, "selector");
+    }
+
+    /**
+     * opens the server socket and starts serving in the background
+     * @param port port on localhost, 0 for any free port
+     * @param workerCount number of threads executing the commands
+     * @return started server
+     * @throws IOException the port can not be bound
+     */
+    public static Server start(int port, int workerCount) throws IOException {
+        Server server = new Server(port, workerCount);
+        server.selectorThread.start();
+        return server;
+    }
+
+    /**
+     * @return bound port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * waits until the server is closed
+     * @throws InterruptedException the waiting thread is interrupted
+     */
+    public void await() throws InterruptedException {
+        selectorThread.join();
+    }
+
+    /**
+     * closes all connections and stops the workers, the commands in progress are finished
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try {
+            while (isRunning) {
+                selector.select();
+                Client changed;
+                while ((changed = changedClients.poll()) != null) {
+                    changed.updateInterest();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            client.read(readBuffer);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            client.write();
+                        }
+                        if (key.isValid()) {
+                            client.updateInterest();
+                        }
+                    } catch (IOException e) {
+                        client.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+//            e.printStackTrace();
+            System.out.println("Server error" + ": " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Client) {
+                    ((Client) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Client client = new Client(channel);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            client.append("Connected to the movie collection, type \"help\" for information about commands\n"
+                    + RESPONSE_END + "\n");
+        } catch (IOException e) {
+            System.out.println("Connection error" + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * connection of one client, the output target of the worker running its commands
+     */
+    private class Client implements Appendable {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        /**
+         * bytes of the line being read (selector thread)
+         */
+        private byte[] line = new byte[256];
+        private int lineLength = 0;
+        private final Queue<String> lines = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedLines = new AtomicInteger();
+        /**
+         * true while a worker runs the lines of the client
+         */
+        private final AtomicBoolean isScheduled = new AtomicBoolean();
+        private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingOutput = new AtomicLong();
+        private volatile boolean isInputEnded = false;
+        /**
+         * the connection is closed when the output is sent
+         */
+        private volatile boolean isClosing = false;
+        private volatile boolean isClosed = false;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * reads the available bytes and queues the complete lines (selector thread)
+         */
+        void read(ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            int count = channel.read(buffer);
+            if (count < 0) {
+                isInputEnded = true;
+                schedule();
+                return;
+            }
+            byte[] bytes = buffer.array();
+            boolean isLineAdded = false;
+            for (int i = 0; i < count; i++) {
+                byte b = bytes[i];
+                if (b != '\n') {
+                    if (lineLength == line.length) {
+                        if (lineLength >= MAX_LINE_LENGTH) {
+                            append("The error of the command" + ": " + "the line is too long\n");
+                            isClosing = true;
+                            return;
+                        }
+                        line = Arrays.copyOf(line, lineLength * 2);
+                    }
+                    line[lineLength++] = b;
+                    continue;
+                }
+                int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                lines.add(new String(line, 0, length, StandardCharsets.UTF_8));
+                queuedLines.incrementAndGet();
+                lineLength = 0;
+                isLineAdded = true;
+            }
+            if (isLineAdded) {
+                schedule();
+            }
+        }
+
+        /**
+         * sends the output while the connection accepts it (selector thread)
+         */
+        void write() throws IOException {
+            ByteBuffer[] buffers = new ByteBuffer[MAX_WRITE_BUFFERS];
+            while (!output.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer buffer : output) {
+                    buffers[count++] = buffer;
+                    if (count == buffers.length) {
+                        break;
+                    }
+                }
+                long written = channel.write(buffers, 0, count);
+                for (int i = 0; i < count && !buffers[i].hasRemaining(); i++) {
+                    output.poll();
+                }
+                if (pendingOutput.addAndGet(-written) < MAX_PENDING_OUTPUT) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+                if (buffers[count - 1].hasRemaining()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * sets the interest ops by the state of the client (selector thread)
+         */
+        void updateInterest() {
+            if (isClosed) {
+                return;
+            }
+            if (isClosing && output.isEmpty()) {
+                close();
+                return;
+            }
+            int ops = 0;
+            if (!isInputEnded && !isClosing && queuedLines.get() < MAX_QUEUED_LINES) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        /**
+         * asks the selector thread to update the interest ops (worker thread)
+         */
+        private void requestUpdate() {
+            changedClients.add(this);
+            selector.wakeup();
+        }
+
+        private void schedule() {
+            if (isScheduled.compareAndSet(false, true)) {
+                workers.execute(this::runCommands);
+            }
+        }
+
+        /**
+         * executes the queued lines (worker thread)
+         */
+        private void runCommands() {
+            OutputSink.setTarget(this);
+            boolean wasPromptEnabled = OutputSink.setPromptEnabled(false);
+            try {
+                while (!isClosed) {
+                    String command = lines.poll();
+                    if (command == null) {
+                        if (isInputEnded) {
+                            closeAfterOutput();
+                            return;
+                        }
+                        isScheduled.set(false);
+                        // a line or the end of the input may come after the poll
+                        if ((lines.isEmpty() && !isInputEnded) || !isScheduled.compareAndSet(false, true)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (queuedLines.decrementAndGet() == MAX_QUEUED_LINES / 2) {
+                        requestUpdate();
+                    }
+                    if (command.trim().equals("exit")) {
+                        OutputSink.println("The connection is closed.");
+                        OutputSink.flush();
+                        closeAfterOutput();
+                        return;
+                    }
+                    boolean isChanging = !command.isBlank() && CommandExecutor.executeRemote(command);
+                    OutputSink.println(RESPONSE_END);
+                    OutputSink.flush();
+                    if (isChanging) {
+                        Journal.flush();
+                    }
+                }
+            } catch (RuntimeException e) {
+//                e.printStackTrace();
+                System.out.println("Client error" + ": " + e.getMessage());
+                closeAfterOutput();
+            } finally {
+                OutputSink.setPromptEnabled(wasPromptEnabled);
+                OutputSink.setTarget(null);
+            }
+        }
+
+        private void closeAfterOutput() {
+            isClosing = true;
+            requestUpdate();
+        }
+
+        /**
+         * queues the output (worker thread), waits while too much of it is not sent
+         * @throws UncheckedIOException the connection is closed while waiting
+         */
+        @Override
+        public Appendable append(CharSequence text) {
+            if (isClosed) {
+                return this;
+            }
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            output.add(ByteBuffer.wrap(bytes));
+            long pending = pendingOutput.addAndGet(bytes.length);
+            requestUpdate();
+            if (pending > MAX_PENDING_OUTPUT && Thread.currentThread() != selectorThread) {
+                synchronized (this) {
+                    while (pendingOutput.get() > MAX_PENDING_OUTPUT && !isClosed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new UncheckedIOException(new IOException("Interrupted while sending"));
+                        }
+                    }
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            return append(text.subSequence(start, end));
+        }
+
+        @Override
+        public Appendable append(char c) {
+            return append(String.valueOf(c));
+        }
+
+        void close() {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            lines.clear();
+            output.clear();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+}
@@ -3,18 +3,32 @@ package utils;
 import model.Movie;
 import model.Person;
 
-import java.util.HashSet;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
  * Ensures uniqueness
  * and prevents infinite recursion in scripts
+ * (the sets are concurrent, they may be read while a command changes them).
+ * Keeps the registry of the screenwriters of the stored movies: movies with equal
+ * screenwriters share one Person instance, and the dictionary of movie names
  */
 public class UniqueValuesUtil {
 
-    private static final TreeSet<Integer> MOVIE_ID_SET = new TreeSet();
-    private static final TreeSet<String> PERSON_NAME_SET = new TreeSet<>();
-    private static final HashSet<String> SCRIPT_FILE_NAME_SET = new HashSet();
+    private static final ConcurrentSkipListSet<Integer> MOVIE_ID_SET = new ConcurrentSkipListSet<>();
+    /**
+     * shared persons by name, a name is registered while some stored movie has a screenwriter with it
+     */
+    private static final ConcurrentHashMap<String, Person> PERSONS = new ConcurrentHashMap<>();
+    /**
+     * shared movie names: a lossy cache indexed by the hash of the name, a slot keeps the last
+     * name put to it. Repeated names share one String, unique names cost nothing but the slot
+     * (a map of all names would cost more than it saves when the names are unique)
+     */
+    private static final String[] NAMES = new String[1 << 16];
+    private static final Set<String> SCRIPT_FILE_NAME_SET = ConcurrentHashMap.newKeySet();
 
     public static void addScript(String fileName) {
         SCRIPT_FILE_NAME_SET.add(fileName);
@@ -28,16 +42,56 @@ public class UniqueValuesUtil {
         return SCRIPT_FILE_NAME_SET.contains(filename);
     }
 
+    /**
+     * finds the registered person with the same name and fields,
+     * the person with a new name is registered.
+     * A person with a registered name but other fields is not shared
+     * @param person
+     * @return shared person or the person itself
+     */
+    public static Person internPerson(Person person) {
+        Person registered = PERSONS.putIfAbsent(person.getName(), person);
+        return registered != null && isSamePerson(registered, person) ? registered : person;
+    }
+
+    /**
+     * unregisters the name of the person (no stored movie has a screenwriter with it)
+     * @param person
+     */
     public static void removePerson(Person person) {
-        PERSON_NAME_SET.remove(person.getName());
+        PERSONS.remove(person.getName());
+    }
+
+    /**
+     * finds an equal name in the dictionary, a new name replaces the name in its slot
+     * (races only lose sharing, strings are immutable)
+     * @param name
+     * @return shared name or the name itself
+     */
+    public static String internName(String name) {
+        int slot = name.hashCode() & (NAMES.length - 1);
+        String shared = NAMES[slot];
+        if (name.equals(shared)) {
+            return shared;
+        }
+        NAMES[slot] = name;
+        return name;
+    }
+
+    static void clearNames() {
+        Arrays.fill(NAMES, null);
     }
 
-    public static void updatePerson(Person person, String name) {
-        PERSON_NAME_SET.add(name);
+    static void clearPersons() {
+        PERSONS.clear();
     }
 
-    public static boolean isPersonNameAvailable(String personName) {
-        return !PERSON_NAME_SET.contains(personName);
+    private static boolean isSamePerson(Person a, Person b) {
+        return a.getName().equals(b.getName())
+                && a.getWeight() == b.getWeight()
+                && a.getEyeColor() == b.getEyeColor()
+                && a.getHairColor() == b.getHairColor()
+                && a.getNationality() == b.getNationality();
     }
 
     public static boolean isMovieIdUnique(Integer id) {
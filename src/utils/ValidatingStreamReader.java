@@ -0,0 +1,128 @@
+package utils;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+
+/**
+ * Cursor over XML file that validates the document against the scheme
+ * while it is being read, so parsing and validation take a single pass.
+ * Every event the cursor moves over is forwarded to a ValidatorHandler,
+ * a scheme violation is thrown as XMLStreamException
+ */
+class ValidatingStreamReader extends StreamReaderDelegate {
+    private final ValidatorHandler validator;
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    ValidatingStreamReader(XMLStreamReader reader, Schema schema) throws XMLStreamException {
+        super(reader);
+        validator = schema.newValidatorHandler();
+        try {
+            validator.startDocument();
+        } catch (SAXException e) {
+            throw new XMLStreamException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int event = super.next();
+        try {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement();
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    validator.endElement(getNamespaceURI() != null ? getNamespaceURI() : "", getLocalName(), qName());
+                    for (int i = 0; i < getNamespaceCount(); i++) {
+                        validator.endPrefixMapping(prefix(getNamespacePrefix(i)));
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    validator.characters(getTextCharacters(), getTextStart(), getTextLength());
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    validator.endDocument();
+                    break;
+                default:
+            }
+        } catch (SAXException e) {
+            throw new XMLStreamException(e.getMessage(), getLocation(), e);
+        }
+        return event;
+    }
+
+    /**
+     * same as XMLStreamReader.nextTag, but moves only through validated next()
+     */
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while (event == XMLStreamConstants.CHARACTERS && isWhiteSpace()
+                || event == XMLStreamConstants.SPACE
+                || event == XMLStreamConstants.COMMENT
+                || event == XMLStreamConstants.PROCESSING_INSTRUCTION) {
+            event = next();
+        }
+        if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag", getLocation());
+        }
+        return event;
+    }
+
+    /**
+     * same as XMLStreamReader.getElementText, but moves only through validated next()
+     */
+    @Override
+    public String getElementText() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int event = next();
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.CHARACTERS
+                    || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE
+                    || event == XMLStreamConstants.ENTITY_REFERENCE) {
+                text.append(getTextCharacters(), getTextStart(), getTextLength());
+            } else if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_DOCUMENT) {
+                throw new XMLStreamException("Element text expected", getLocation());
+            }
+            event = next();
+        }
+        return text.toString();
+    }
+
+    private void startElement() throws SAXException {
+        for (int i = 0; i < getNamespaceCount(); i++) {
+            validator.startPrefixMapping(prefix(getNamespacePrefix(i)), getNamespaceURI(i));
+        }
+        attributes.clear();
+        for (int i = 0; i < getAttributeCount(); i++) {
+            String uri = getAttributeNamespace(i);
+            String prefix = getAttributePrefix(i);
+            String localName = getAttributeLocalName(i);
+            attributes.addAttribute(uri != null ? uri : "",
+                    localName,
+                    prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName,
+                    getAttributeType(i),
+                    getAttributeValue(i));
+        }
+        validator.startElement(getNamespaceURI() != null ? getNamespaceURI() : "", getLocalName(), qName(), attributes);
+    }
+
+    private String qName() {
+        String prefix = getPrefix();
+        return prefix == null || prefix.isEmpty() ? getLocalName() : prefix + ":" + getLocalName();
+    }
+
+    private static String prefix(String prefix) {
+        return prefix != null ? prefix : "";
+    }
+}